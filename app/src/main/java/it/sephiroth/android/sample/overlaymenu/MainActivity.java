@@ -1,7 +1,9 @@
 package it.sephiroth.android.sample.overlaymenu;
 
+import android.content.res.AssetManager;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.v7.app.ActionBarActivity;
@@ -12,6 +14,7 @@ import android.widget.TextView;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
 
 import it.sephiroth.android.library.overlaymenu.OverMenuView;
 
@@ -21,6 +24,7 @@ public class MainActivity extends ActionBarActivity
     private ImageView mImageView;
     private OverMenuView overMenuView;
     private TextView textView;
+    private ImageLoader mImageLoader;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -35,19 +39,22 @@ public class MainActivity extends ActionBarActivity
         overMenuView.setOnSelectionChangedListener(this);
         overMenuView.setOnMenuVisibilityChangeListener(this);
 
-        try {
-            loadImage("image.jpg");
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        loadImage("image.jpg");
+    }
 
+    @Override
+    protected void onDestroy() {
+        if (null != mImageLoader) {
+            mImageLoader.cancel(true);
+            mImageLoader = null;
+        }
+        super.onDestroy();
     }
 
-    private void loadImage(@NonNull final String file) throws IOException {
-        final InputStream input = getAssets().open(file);
-        Bitmap bitmap = BitmapFactory.decodeStream(input);
-        mImageView.setImageBitmap(bitmap);
-        input.close();
+    private void loadImage(@NonNull final String file) {
+        // decoded in background, not to delay the first frame
+        mImageLoader = new ImageLoader(getAssets(), file, mImageView);
+        mImageLoader.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
     }
 
     @Override
@@ -60,4 +67,43 @@ public class MainActivity extends ActionBarActivity
     public void onVisibilityChanged(final View view, final boolean visible) {
         Log.d(TAG, "onVisibilityChanged: " + view + ", " + visible);
     }
+
+    /**
+     * Decodes an asset image into the view. It doesn't hold the activity, which can be
+     * destroyed while decoding.
+     */
+    private static final class ImageLoader extends AsyncTask<Void, Void, Bitmap> {
+        private final AssetManager mAssets;
+        private final String mFile;
+        private final WeakReference<ImageView> mImageView;
+
+        ImageLoader(@NonNull final AssetManager assets, @NonNull final String file, @NonNull final ImageView imageView) {
+            mAssets = assets;
+            mFile = file;
+            mImageView = new WeakReference<ImageView>(imageView);
+        }
+
+        @Override
+        protected Bitmap doInBackground(final Void... params) {
+            try {
+                final InputStream input = mAssets.open(mFile);
+                try {
+                    return BitmapFactory.decodeStream(input);
+                } finally {
+                    input.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(final Bitmap bitmap) {
+            final ImageView imageView = mImageView.get();
+            if (null != bitmap && null != imageView) {
+                imageView.setImageBitmap(bitmap);
+            }
+        }
+    }
 }
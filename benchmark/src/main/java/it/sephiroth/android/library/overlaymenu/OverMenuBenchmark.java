@@ -0,0 +1,115 @@
+package it.sephiroth.android.library.overlaymenu;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+/**
+ * A single benchmark: {@link #run()} is one operation, executed in batches until the
+ * measurement time is elapsed. Allocation is read from the current thread counters,
+ * when the JVM supports them.
+ */
+abstract class OverMenuBenchmark {
+    private static volatile int sSink;
+
+    private final String mName;
+
+    OverMenuBenchmark(final String name) {
+        mName = name;
+    }
+
+    String getName() {
+        return mName;
+    }
+
+    /**
+     * Called once, before the warmup
+     */
+    void setUp() {
+    }
+
+    /**
+     * Performs one operation
+     *
+     * @return any value depending on the work done, so it can't be optimized away
+     */
+    abstract int run();
+
+    final Result measure(final long warmupMs, final long measureMs) {
+        setUp();
+
+        // warmup, growing the batch until it takes about a millisecond
+        int batch = 1;
+        long deadline = System.nanoTime() + warmupMs * 1000000L;
+        while (System.nanoTime() < deadline) {
+            final long start = System.nanoTime();
+            runBatch(batch);
+            if (System.nanoTime() - start < 1000000L && batch < (1 << 24)) {
+                batch <<= 1;
+            }
+        }
+
+        final long startBytes = allocatedBytes();
+        final long start = System.nanoTime();
+        deadline = start + measureMs * 1000000L;
+        long ops = 0;
+        long now;
+        do {
+            runBatch(batch);
+            ops += batch;
+            now = System.nanoTime();
+        } while (now < deadline);
+        final long bytes = allocatedBytes() - startBytes;
+
+        return new Result(mName, ops, now - start, startBytes < 0 ? -1 : (double) bytes / ops);
+    }
+
+    private void runBatch(final int count) {
+        int sink = 0;
+        for (int i = 0; i < count; i++) {
+            sink += run();
+        }
+        sSink += sink;
+    }
+
+    private static long allocatedBytes() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    static final class Result {
+        final String name;
+        final long operations;
+        final long elapsedNanos;
+        /** -1 if not available */
+        final double bytesPerOperation;
+
+        Result(final String name, final long operations, final long elapsedNanos, final double bytesPerOperation) {
+            this.name = name;
+            this.operations = operations;
+            this.elapsedNanos = elapsedNanos;
+            this.bytesPerOperation = bytesPerOperation;
+        }
+
+        double getNanosPerOperation() {
+            return (double) elapsedNanos / operations;
+        }
+
+        double getOperationsPerSecond() {
+            return operations * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                Locale.US, "%-40s %14.1f ops/s %12.1f ns/op %12s B/op", name, getOperationsPerSecond(), getNanosPerOperation(),
+                bytesPerOperation < 0 ? "n/a" : String.format(Locale.US, "%.1f", bytesPerOperation));
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package it.sephiroth.android.library.overlaymenu;
+
+/**
+ * The menu state machine of OverMenuLayout, without the views: entries, geometry pass,
+ * scrolling, hit testing and selection dispatch use the library classes, while the
+ * view work (inflation, measure, draw) is replaced by fixed metrics.
+ */
+final class OverMenuBenchmarkMenu {
+    static final int ROW_HEIGHT = 48;
+    static final int PADDING = 16;
+    static final int ITEMS_GAP = 8;
+    static final float SCROLL_GAIN = 1.2f;
+
+    interface OnSelectionChangedListener {
+        void onSelectionChanged(int position);
+    }
+
+    private final OverMenuScrollModel mScrollModel = new OverMenuScrollModel();
+    private final OverMenuEntriesDiff mEntriesDiff = new OverMenuEntriesDiff();
+    private final OverMenuAdapter.Observer mObserver = new OverMenuAdapter.Observer() {
+        @Override
+        public void onChanged() {
+            onGeometry();
+        }
+
+        @Override
+        public void onItemRangeChanged(final int positionStart, final int itemCount) {
+        }
+
+        @Override
+        public void onItemRangeInserted(final int positionStart, final int itemCount) {
+            onGeometry();
+        }
+
+        @Override
+        public void onItemRangeRemoved(final int positionStart, final int itemCount) {
+            onGeometry();
+        }
+    };
+
+    private OverMenuAdapter mAdapter;
+    private OnSelectionChangedListener mListener;
+    private CharSequence mSelectedText;
+    private int mLongestPosition = -1;
+    private int mLongestLength;
+    private int mCurrentPosition = -1;
+
+    void setOnSelectionChangedListener(final OnSelectionChangedListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Equivalent of OverMenuView.setEntries: the first entries are followed by the geometry pass,
+     * the next ones are compared with the current ones and the geometry is only computed again
+     * if the number of rows changed or a changed entry is longer than the rows
+     */
+    void setEntries(final CharSequence[] entries) {
+        final OverMenuAdapter adapter = new OverMenuAdapter.ArrayAdapter(entries);
+        final OverMenuAdapter oldAdapter = mAdapter;
+        if (null != oldAdapter) {
+            oldAdapter.unregisterObserver(mObserver);
+        }
+        mAdapter = adapter;
+        mAdapter.registerObserver(mObserver);
+
+        if (null == oldAdapter) {
+            mCurrentPosition = -1;
+            onLongestEntry();
+            onGeometry();
+            return;
+        }
+
+        final OverMenuEntriesDiff diff = mEntriesDiff;
+        diff.compute(oldAdapter, adapter);
+        boolean sizeChanged = diff.isCountChanged();
+        // the changed rows are bound again, the longest entry gives the width of the rows
+        for (int k = 0; k < diff.getChangedCount(); k++) {
+            final CharSequence text = adapter.getItem(diff.getChangedPosition(k));
+            sizeChanged |= null != text && text.length() > mLongestLength;
+        }
+
+        if (mCurrentPosition >= diff.getNewCount()) {
+            mCurrentPosition = -1;
+        } else if (mCurrentPosition > -1 && diff.isChanged(mCurrentPosition)) {
+            mSelectedText = adapter.getItem(mCurrentPosition);
+        }
+
+        if (sizeChanged) {
+            onLongestEntry();
+            onGeometry();
+        }
+    }
+
+    private void onLongestEntry() {
+        mLongestPosition = OverMenuEntriesDiff.findLongestEntry(mAdapter);
+        final CharSequence longest = mLongestPosition > -1 ? mAdapter.getItem(mLongestPosition) : null;
+        mLongestLength = null != longest ? longest.length() : 0;
+    }
+
+    OverMenuAdapter getAdapter() {
+        return mAdapter;
+    }
+
+    int getLongestPosition() {
+        return mLongestPosition;
+    }
+
+    int getSelectedPosition() {
+        return mCurrentPosition;
+    }
+
+    float getTranslation() {
+        return mScrollModel.getTranslation();
+    }
+
+    private void onGeometry() {
+        final int count = mAdapter.getCount();
+        final int height = PADDING * 2 + count * ROW_HEIGHT;
+        mScrollModel.getRowGeometry().setFixed(count, PADDING, ROW_HEIGHT);
+        mScrollModel.setRange(height, PADDING * 2, ITEMS_GAP);
+        setSelectedPosition(count / 2);
+    }
+
+    void setSelectedPosition(final int position) {
+        onPostScroll(mScrollModel.scrollToPosition(position));
+    }
+
+    void onScroll(final float distanceY) {
+        onPostScroll(mScrollModel.scrollBy(distanceY * SCROLL_GAIN));
+    }
+
+    private void onPostScroll(final float current) {
+        if (mScrollModel.getCount() == 0) {
+            return;
+        }
+
+        final int position = mScrollModel.getPositionAt(current);
+        if (position > -1 && position != mCurrentPosition) {
+            mSelectedText = mAdapter.getItem(position);
+            mCurrentPosition = position;
+            if (null != mListener) {
+                mListener.onSelectionChanged(position);
+            }
+        }
+    }
+
+    CharSequence getSelectedText() {
+        return mSelectedText;
+    }
+}
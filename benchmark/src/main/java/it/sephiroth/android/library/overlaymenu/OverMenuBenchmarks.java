@@ -0,0 +1,267 @@
+package it.sephiroth.android.library.overlaymenu;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Runs the menu benchmarks on the local JVM:
+ * <pre>
+ *     ./gradlew :benchmark:benchmark [-Pfilter=scroll]
+ * </pre>
+ * Arguments: an optional filter on the benchmark names, and optional
+ * warmup and measurement times, in milliseconds.
+ */
+public final class OverMenuBenchmarks {
+    static final int[] SIZES = {10, 100, 1000, 10000};
+
+    /** onScroll calls in a single gesture, about one second of touch events */
+    static final int GESTURE_LENGTH = 60;
+
+    private OverMenuBenchmarks() {
+    }
+
+    public static void main(final String[] args) {
+        final String filter = args.length > 0 ? args[0] : null;
+        final long warmupMs = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+        final long measureMs = args.length > 2 ? Long.parseLong(args[2]) : 2000;
+
+        System.out.println(String.format(Locale.US, "java %s, %s", System.getProperty("java.version"), System.getProperty("java.vm.name")));
+        for (OverMenuBenchmark benchmark : create()) {
+            if (null == filter || benchmark.getName().contains(filter)) {
+                System.out.println(benchmark.measure(warmupMs, measureMs));
+            }
+        }
+    }
+
+    static List<OverMenuBenchmark> create() {
+        final List<OverMenuBenchmark> result = new ArrayList<OverMenuBenchmark>();
+        for (final int size : SIZES) {
+            result.add(setEntries(size));
+        }
+        for (final int size : SIZES) {
+            result.add(scrollGesture(size));
+        }
+        for (final int size : SIZES) {
+            result.add(setSelectedPosition(size));
+        }
+        result.add(scrollModel());
+        result.add(selectionDispatch());
+        result.add(fling());
+        result.add(fader());
+        return result;
+    }
+
+    static CharSequence[] makeEntries(final int size) {
+        final CharSequence[] entries = new CharSequence[size];
+        for (int i = 0; i < size; i++) {
+            entries[i] = "Entry " + i;
+        }
+        return entries;
+    }
+
+    /**
+     * New entries replacing the current ones, one in ten of them renamed:
+     * the diff with the current entries, the geometry doesn't change
+     */
+    static OverMenuBenchmark setEntries(final int size) {
+        return new OverMenuBenchmark("setEntries/" + size) {
+            private final OverMenuBenchmarkMenu mMenu = new OverMenuBenchmarkMenu();
+            private final CharSequence[] mEntries = makeEntries(size);
+            private final CharSequence[] mRenamed = makeEntries(size);
+            private boolean mToggle;
+
+            @Override
+            void setUp() {
+                for (int i = 0; i < size; i += 10) {
+                    mRenamed[i] = "Other " + i;
+                }
+                mMenu.setEntries(mEntries);
+            }
+
+            @Override
+            int run() {
+                mToggle = !mToggle;
+                mMenu.setEntries(mToggle ? mRenamed : mEntries);
+                return mMenu.getLongestPosition() + mMenu.getSelectedPosition();
+            }
+        };
+    }
+
+    /**
+     * One drag gesture, from one end of the menu to the other and back
+     */
+    static OverMenuBenchmark scrollGesture(final int size) {
+        return new OverMenuBenchmark("onScroll/gesture/" + size) {
+            private final OverMenuBenchmarkMenu mMenu = new OverMenuBenchmarkMenu();
+            private float mDistance;
+
+            @Override
+            void setUp() {
+                mMenu.setEntries(makeEntries(size));
+                mDistance = (float) size * OverMenuBenchmarkMenu.ROW_HEIGHT / GESTURE_LENGTH;
+            }
+
+            @Override
+            int run() {
+                for (int i = 0; i < GESTURE_LENGTH; i++) {
+                    mMenu.onScroll(i < GESTURE_LENGTH / 2 ? mDistance : -mDistance);
+                }
+                return mMenu.getSelectedPosition();
+            }
+        };
+    }
+
+    static OverMenuBenchmark setSelectedPosition(final int size) {
+        return new OverMenuBenchmark("setSelectedPosition/" + size) {
+            private final OverMenuBenchmarkMenu mMenu = new OverMenuBenchmarkMenu();
+            private final int[] mPositions = new int[1024];
+            private int mIndex;
+
+            @Override
+            void setUp() {
+                mMenu.setEntries(makeEntries(size));
+                final Random random = new Random(size);
+                for (int i = 0; i < mPositions.length; i++) {
+                    mPositions[i] = random.nextInt(size);
+                }
+            }
+
+            @Override
+            int run() {
+                mMenu.setSelectedPosition(mPositions[mIndex++ & (mPositions.length - 1)]);
+                return mMenu.getSelectedPosition();
+            }
+        };
+    }
+
+    /**
+     * A single scroll event on the scroll model: translation update and hit test
+     */
+    static OverMenuBenchmark scrollModel() {
+        return new OverMenuBenchmark("scrollModel/event") {
+            private final OverMenuScrollModel mModel = new OverMenuScrollModel();
+            private int mEvents;
+
+            @Override
+            void setUp() {
+                mModel.getRowGeometry().setFixed(1000, 0, OverMenuBenchmarkMenu.ROW_HEIGHT);
+                mModel.setRange(1000 * OverMenuBenchmarkMenu.ROW_HEIGHT, 0, 0);
+            }
+
+            @Override
+            int run() {
+                // back and forth across the whole menu
+                final float distance = (mEvents++ & 0x2000) == 0 ? 7.5f : -7.5f;
+                return mModel.getPositionAt(mModel.scrollBy(distance));
+            }
+        };
+    }
+
+    /**
+     * Every onScroll call crosses a row, so every call dispatches a selection change
+     */
+    static OverMenuBenchmark selectionDispatch() {
+        return new OverMenuBenchmark("selectionDispatch") {
+            private final OverMenuBenchmarkMenu mMenu = new OverMenuBenchmarkMenu();
+            private int mSelections;
+            private float mDirection = 1;
+
+            @Override
+            void setUp() {
+                mMenu.setEntries(makeEntries(1000));
+                mMenu.setOnSelectionChangedListener(
+                    new OverMenuBenchmarkMenu.OnSelectionChangedListener() {
+                        @Override
+                        public void onSelectionChanged(final int position) {
+                            mSelections++;
+                        }
+                    });
+            }
+
+            @Override
+            int run() {
+                final int position = mMenu.getSelectedPosition();
+                if (position <= 1 || position >= 998) {
+                    mDirection = -mDirection;
+                }
+                mMenu.onScroll(mDirection * OverMenuBenchmarkMenu.ROW_HEIGHT / OverMenuBenchmarkMenu.SCROLL_GAIN);
+                return mSelections;
+            }
+        };
+    }
+
+    /**
+     * A fling from the top of a 1000 entries menu until it snaps, at 60fps
+     */
+    static OverMenuBenchmark fling() {
+        return new OverMenuBenchmark("fling") {
+            private final OverMenuFling mFling = new OverMenuFling(
+                new OverMenuFling.SnapTarget() {
+                    @Override
+                    public float getSnapTranslation(final float translation) {
+                        return Math.round(translation / OverMenuBenchmarkMenu.ROW_HEIGHT) * OverMenuBenchmarkMenu.ROW_HEIGHT;
+                    }
+                }, 120);
+
+            @Override
+            int run() {
+                final float max = 500 * OverMenuBenchmarkMenu.ROW_HEIGHT;
+                long time = 0;
+                int frames = 0;
+                mFling.start(max, -8000, -max, max, time);
+                while (mFling.step(time += 16)) {
+                    frames++;
+                }
+                return frames;
+            }
+        };
+    }
+
+    /**
+     * Selection moving by one row every frame, with two rows fading each time
+     */
+    static OverMenuBenchmark fader() {
+        return new OverMenuBenchmark("fader") {
+            private final float[] mAlpha = new float[32];
+            private final Integer[] mRows = new Integer[mAlpha.length];
+            private final OverMenuFader<Integer> mFader = new OverMenuFader<Integer>(
+                new OverMenuFader.Applier<Integer>() {
+                    @Override
+                    public float getAlpha(final Integer target) {
+                        return mAlpha[target];
+                    }
+
+                    @Override
+                    public void setAlpha(final Integer target, final float alpha) {
+                        mAlpha[target] = alpha;
+                    }
+
+                    @Override
+                    public void onFadeEnd(final Integer target, final float alpha) {
+                    }
+                });
+            private int mPosition;
+            private long mTime;
+
+            @Override
+            void setUp() {
+                for (int i = 0; i < mRows.length; i++) {
+                    mRows[i] = i;
+                    mAlpha[i] = 1;
+                }
+            }
+
+            @Override
+            int run() {
+                final int previous = mPosition;
+                mPosition = (mPosition + 1) % mRows.length;
+                mTime += 16;
+                mFader.fadeTo(mRows[previous], 1, mTime);
+                mFader.fadeTo(mRows[mPosition], 0, mTime);
+                return mFader.step(mTime) ? 1 : 0;
+            }
+        };
+    }
+}
@@ -0,0 +1,127 @@
+package it.sephiroth.android.library.overlaymenu;
+
+import java.util.ArrayList;
+
+/**
+ * Data source for the {@link OverMenuView} entries.
+ * Items are requested lazily, only when the menu needs to bind them. Call
+ * one of the notify methods when the data changes, so that only the affected
+ * rows will be updated.
+ */
+public abstract class OverMenuAdapter {
+    public static final long NO_ID = -1;
+
+    private final ArrayList<Observer> mObservers = new ArrayList<Observer>();
+
+    public abstract int getCount();
+
+    public abstract CharSequence getItem(int position);
+
+    /**
+     * Uri of the entry icon, null if none. Supported schemes are content, file and android.resource,
+     * plus {@link OverMenuIcons#ASSET_PREFIX} for the application assets.
+     * Icons are not drawn by the canvas renderer.
+     */
+    public String getIconUri(final int position) {
+        return null;
+    }
+
+    /**
+     * Stable id of the entry, used as the key of its submenu.
+     * By default the position is used.
+     */
+    public long getItemId(final int position) {
+        return position;
+    }
+
+    /**
+     * If true the entry opens a submenu, loaded by the {@link OverMenuView.SubmenuLoader}
+     */
+    public boolean hasSubmenu(final int position) {
+        return false;
+    }
+
+    /**
+     * Everything changed, the menu will be rebuilt
+     */
+    public void notifyDataSetChanged() {
+        for (int i = mObservers.size() - 1; i >= 0; i--) {
+            mObservers.get(i).onChanged();
+        }
+    }
+
+    public void notifyItemChanged(final int position) {
+        notifyItemRangeChanged(position, 1);
+    }
+
+    public void notifyItemRangeChanged(final int positionStart, final int itemCount) {
+        for (int i = mObservers.size() - 1; i >= 0; i--) {
+            mObservers.get(i).onItemRangeChanged(positionStart, itemCount);
+        }
+    }
+
+    public void notifyItemInserted(final int position) {
+        notifyItemRangeInserted(position, 1);
+    }
+
+    public void notifyItemRangeInserted(final int positionStart, final int itemCount) {
+        for (int i = mObservers.size() - 1; i >= 0; i--) {
+            mObservers.get(i).onItemRangeInserted(positionStart, itemCount);
+        }
+    }
+
+    public void notifyItemRemoved(final int position) {
+        notifyItemRangeRemoved(position, 1);
+    }
+
+    public void notifyItemRangeRemoved(final int positionStart, final int itemCount) {
+        for (int i = mObservers.size() - 1; i >= 0; i--) {
+            mObservers.get(i).onItemRangeRemoved(positionStart, itemCount);
+        }
+    }
+
+    void registerObserver(final Observer observer) {
+        if (!mObservers.contains(observer)) {
+            mObservers.add(observer);
+        }
+    }
+
+    void unregisterObserver(final Observer observer) {
+        mObservers.remove(observer);
+    }
+
+    interface Observer {
+        void onChanged();
+
+        void onItemRangeChanged(int positionStart, int itemCount);
+
+        void onItemRangeInserted(int positionStart, int itemCount);
+
+        void onItemRangeRemoved(int positionStart, int itemCount);
+    }
+
+    /**
+     * Adapter backed by a fixed array, used by {@link OverMenuView#setEntries(CharSequence[])}
+     */
+    static final class ArrayAdapter extends OverMenuAdapter {
+        private final CharSequence[] mEntries;
+
+        ArrayAdapter(final CharSequence[] entries) {
+            mEntries = entries;
+        }
+
+        CharSequence[] getEntries() {
+            return mEntries;
+        }
+
+        @Override
+        public int getCount() {
+            return null != mEntries ? mEntries.length : 0;
+        }
+
+        @Override
+        public CharSequence getItem(final int position) {
+            return mEntries[position];
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package it.sephiroth.android.library.overlaymenu;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.NonNull;
+import android.text.Layout;
+import android.text.TextPaint;
+import android.view.Gravity;
+import android.view.View;
+import android.widget.TextView;
+
+/**
+ * Single view menu renderer: draws the visible entries and the selected highlight
+ * directly onto the canvas, using the text layouts computed in background, instead of using
+ * one view per entry. Nothing is measured or laid out on the UI thread: until the text layouts
+ * are ready the view has no width and draws nothing.
+ * Like the other menu containers it's as tall as all its entries and it's scrolled
+ * by the parent changing its translation.
+ */
+final class OverMenuCanvasView extends View {
+    static final String TAG = "OverMenuCanvasView";
+
+    private final TextPaint mPaint;
+    private final TextPaint mSelectedPaint;
+    private final int mHorizontalPadding;
+    private final int mVerticalPadding;
+    private final int mGravity;
+    private final Drawable mSelectedBackground;
+    private OverMenuAdapter mAdapter;
+    private OverMenuTextLayouts mTextLayouts;
+    private int mCount;
+    private int mRowHeight;
+    private int mSelectedRowHeight;
+    private int mContentWidth;
+    private int mSelectedPosition = -1;
+
+    /**
+     * @param row                a row using the menu text appearance and paddings
+     * @param selectedRow        a row using the selected text appearance and paddings
+     * @param selectedBackground background drawn behind the selected entry, can be null
+     */
+    OverMenuCanvasView(
+        final Context context, @NonNull final TextView row, @NonNull final TextView selectedRow, final Drawable selectedBackground) {
+        super(context);
+        mPaint = new TextPaint(row.getPaint());
+        mPaint.setColor(row.getCurrentTextColor());
+        mSelectedPaint = new TextPaint(selectedRow.getPaint());
+        mSelectedPaint.setColor(selectedRow.getCurrentTextColor());
+        mHorizontalPadding = row.getPaddingLeft();
+        mVerticalPadding = row.getPaddingTop();
+        mGravity = row.getGravity() & Gravity.HORIZONTAL_GRAVITY_MASK;
+        mSelectedBackground = selectedBackground;
+
+        mRowHeight = rowHeight(mPaint);
+        mSelectedRowHeight = rowHeight(mSelectedPaint);
+    }
+
+    private int rowHeight(@NonNull final TextPaint paint) {
+        return OverMenuTextLayouts.makeLayout("", paint).getHeight() + mVerticalPadding * 2;
+    }
+
+    void setAdapter(final OverMenuAdapter adapter) {
+        mAdapter = adapter;
+        mCount = null != adapter ? adapter.getCount() : 0;
+        mTextLayouts = null;
+        mContentWidth = 0;
+        mSelectedPosition = -1;
+        requestLayout();
+        invalidate();
+    }
+
+    /**
+     * Uses the layouts computed in background, if they match the current entries
+     */
+    void setTextLayouts(@NonNull final OverMenuTextLayouts layouts) {
+        if (!layouts.isReady() || !layouts.isFor(mAdapter) || layouts == mTextLayouts) {
+            return;
+        }
+
+        mTextLayouts = layouts;
+        updateContentWidth();
+        invalidate();
+    }
+
+    /**
+     * Entries changed: the text layouts have already laid them out again, the content is
+     * measured again only if the widest entry changed
+     */
+    void onItemRangeChanged(final int positionStart, final int itemCount) {
+        if (null != mTextLayouts) {
+            updateContentWidth();
+            invalidate();
+        }
+    }
+
+    private void updateContentWidth() {
+        final int contentWidth = (int) Math.ceil(mTextLayouts.getMaxWidth());
+        if (contentWidth != mContentWidth) {
+            mContentWidth = contentWidth;
+            requestLayout();
+        }
+    }
+
+    void setSelectedPosition(final int position) {
+        if (mSelectedPosition != position) {
+            mSelectedPosition = position;
+            invalidate();
+        }
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    int getRowHeight() {
+        return mRowHeight;
+    }
+
+    int getSelectedRowHeight() {
+        return mSelectedRowHeight;
+    }
+
+    @Override
+    public void setTranslationY(final float translationY) {
+        super.setTranslationY(translationY);
+        // visible entries depend on the translation
+        invalidate();
+    }
+
+    @Override
+    protected void onMeasure(final int widthMeasureSpec, final int heightMeasureSpec) {
+        final int width = resolveSize(mContentWidth + getPaddingLeft() + getPaddingRight(), widthMeasureSpec);
+        // height is intentionally not constrained by the parent: the content is scrolled using the translation
+        setMeasuredDimension(width, getPaddingTop() + getPaddingBottom() + mCount * mRowHeight);
+    }
+
+    @Override
+    protected void onDraw(final Canvas canvas) {
+        if (mCount == 0 || mRowHeight <= 0 || null == mTextLayouts || null == getParent()) {
+            return;
+        }
+
+        final View parent = (View) getParent();
+        final float offset = getTop() + getTranslationY();
+        final int paddingTop = getPaddingTop();
+        final int left = getPaddingLeft() + mHorizontalPadding;
+        final int right = getWidth() - getPaddingRight() - mHorizontalPadding;
+
+        final int first = OverMenuScrollModel.clamp((int) Math.floor((-offset - paddingTop) / mRowHeight), 0, mCount - 1);
+        final int last = OverMenuScrollModel.clamp((int) Math.ceil((parent.getHeight() - offset - paddingTop) / mRowHeight), 0, mCount - 1);
+
+        for (int position = first; position <= last; position++) {
+            if (position == mSelectedPosition) {
+                continue;
+            }
+            drawText(canvas, mTextLayouts.getLayout(position), left, right, paddingTop + position * mRowHeight + mVerticalPadding);
+        }
+
+        if (mSelectedPosition > -1 && mSelectedPosition < mCount) {
+            // the selected entry is always drawn at the center of the parent
+            final int centerY = (int) (parent.getHeight() / 2 - offset);
+            final int top = centerY - mSelectedRowHeight / 2;
+
+            if (null != mSelectedBackground) {
+                mSelectedBackground.setBounds(getPaddingLeft(), top, getWidth() - getPaddingRight(), top + mSelectedRowHeight);
+                mSelectedBackground.draw(canvas);
+            }
+
+            drawText(canvas, mTextLayouts.getSelectedLayout(mSelectedPosition), left, right, top + mVerticalPadding);
+        }
+    }
+
+    private void drawText(final Canvas canvas, final Layout layout, final int left, final int right, final int top) {
+        if (null == layout) {
+            return;
+        }
+
+        final int available = right - left;
+        final int width = Math.min(layout.getWidth(), available);
+        final int x;
+        if (mGravity == Gravity.LEFT) {
+            x = left;
+        } else if (mGravity == Gravity.RIGHT) {
+            x = right - width;
+        } else {
+            x = left + (available - width) / 2;
+        }
+
+        canvas.save();
+        canvas.clipRect(left, top, right, top + layout.getHeight());
+        canvas.translate(x, top);
+        layout.draw(canvas);
+        canvas.restore();
+    }
+}
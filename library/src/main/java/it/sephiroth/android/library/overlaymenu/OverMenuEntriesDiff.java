@@ -0,0 +1,107 @@
+package it.sephiroth.android.library.overlaymenu;
+
+import java.util.Arrays;
+
+/**
+ * Differences between the current entries and the new ones: the positions, among the ones
+ * both have, whose text or icon changed. Rows past the shorter of the two are added or removed.
+ * The changed positions are kept in a reused table, computing a diff doesn't allocate once
+ * the table is large enough.
+ */
+final class OverMenuEntriesDiff {
+    private int[] mChanged = new int[0];
+    private int mChangedCount;
+    private int mOldCount;
+    private int mNewCount;
+
+    void compute(final OverMenuAdapter oldAdapter, final OverMenuAdapter newAdapter) {
+        mOldCount = oldAdapter.getCount();
+        mNewCount = newAdapter.getCount();
+        mChangedCount = 0;
+
+        final int common = Math.min(mOldCount, mNewCount);
+        for (int i = 0; i < common; i++) {
+            if (equals(oldAdapter.getItem(i), newAdapter.getItem(i))
+                && equals(oldAdapter.getIconUri(i), newAdapter.getIconUri(i))) {
+                continue;
+            }
+
+            if (mChangedCount == mChanged.length) {
+                mChanged = Arrays.copyOf(mChanged, Math.max(16, mChangedCount * 2));
+            }
+            mChanged[mChangedCount++] = i;
+        }
+    }
+
+    int getOldCount() {
+        return mOldCount;
+    }
+
+    int getNewCount() {
+        return mNewCount;
+    }
+
+    boolean isCountChanged() {
+        return mOldCount != mNewCount;
+    }
+
+    /**
+     * Number of changed positions, the rows to be added or removed are not included
+     */
+    int getChangedCount() {
+        return mChangedCount;
+    }
+
+    int getChangedPosition(final int index) {
+        return mChanged[index];
+    }
+
+    boolean isChanged(final int position) {
+        return Arrays.binarySearch(mChanged, 0, mChangedCount, position) > -1;
+    }
+
+    /**
+     * Position of the entry with the longest text, -1 if there are no entries
+     */
+    static int findLongestEntry(final OverMenuAdapter adapter) {
+        int result = -1;
+        if (null != adapter) {
+            int length = -1;
+            final int count = adapter.getCount();
+            for (int i = 0; i < count; i++) {
+                final CharSequence item = adapter.getItem(i);
+                final int current = null != item ? item.length() : 0;
+                if (current > length) {
+                    length = current;
+                    result = i;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Same as TextUtils.equals, this class doesn't depend on the framework
+     */
+    private static boolean equals(final CharSequence a, final CharSequence b) {
+        if (a == b) {
+            return true;
+        }
+        if (null == a || null == b) {
+            return false;
+        }
+        final int length = a.length();
+        if (length != b.length()) {
+            return false;
+        }
+        if (a instanceof String && b instanceof String) {
+            return a.equals(b);
+        }
+        for (int i = 0; i < length; i++) {
+            if (a.charAt(i) != b.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
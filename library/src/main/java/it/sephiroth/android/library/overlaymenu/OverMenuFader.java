@@ -0,0 +1,138 @@
+package it.sephiroth.android.library.overlaymenu;
+
+/**
+ * Alpha transitions for the menu rows.
+ * Transitions are stored in preallocated slots: fading a target which is already
+ * running retargets it in place, starting from its current alpha, so overlapping
+ * transitions never stack. Once the setup is done no allocation is performed.
+ *
+ * @param <T> the faded object, usually a view
+ */
+final class OverMenuFader<T> {
+    static final int DEFAULT_CAPACITY = 16;
+    static final long DEFAULT_DURATION = 100;
+
+    interface Applier<T> {
+        float getAlpha(T target);
+
+        void setAlpha(T target, float alpha);
+
+        /**
+         * The target reached its final alpha
+         */
+        void onFadeEnd(T target, float alpha);
+    }
+
+    private final Applier<T> mApplier;
+    private final Object[] mTargets;
+    private final float[] mFrom;
+    private final float[] mTo;
+    private final long[] mStart;
+    private int mCount;
+    private long mDuration = DEFAULT_DURATION;
+
+    OverMenuFader(final Applier<T> applier) {
+        this(applier, DEFAULT_CAPACITY);
+    }
+
+    OverMenuFader(final Applier<T> applier, final int capacity) {
+        mApplier = applier;
+        mTargets = new Object[capacity];
+        mFrom = new float[capacity];
+        mTo = new float[capacity];
+        mStart = new long[capacity];
+    }
+
+    void setDuration(final long duration) {
+        mDuration = duration;
+    }
+
+    boolean isRunning() {
+        return mCount > 0;
+    }
+
+    /**
+     * Starts (or retargets) the transition of the target to the given alpha
+     */
+    void fadeTo(final T target, final float alpha, final long timeMs) {
+        int index = indexOf(target);
+        if (index < 0) {
+            if (mCount == mTargets.length) {
+                // no free slots, complete the oldest transition
+                end(0);
+            }
+            index = mCount++;
+            mTargets[index] = target;
+        }
+
+        mFrom[index] = mApplier.getAlpha(target);
+        mTo[index] = alpha;
+        mStart[index] = timeMs;
+    }
+
+    /**
+     * Removes the target, leaving its alpha untouched
+     */
+    void cancel(final T target) {
+        final int index = indexOf(target);
+        if (index > -1) {
+            remove(index);
+        }
+    }
+
+    /**
+     * Advances all the running transitions
+     *
+     * @return true if there are still transitions running
+     */
+    @SuppressWarnings ("unchecked")
+    boolean step(final long timeMs) {
+        for (int i = mCount - 1; i >= 0; i--) {
+            final float fraction = mDuration > 0 ? (float) (timeMs - mStart[i]) / mDuration : 1;
+            if (fraction >= 1) {
+                end(i);
+            } else if (fraction > 0) {
+                mApplier.setAlpha((T) mTargets[i], mFrom[i] + (mTo[i] - mFrom[i]) * fraction);
+            }
+        }
+        return mCount > 0;
+    }
+
+    /**
+     * Completes all the running transitions
+     */
+    void finish() {
+        while (mCount > 0) {
+            end(mCount - 1);
+        }
+    }
+
+    @SuppressWarnings ("unchecked")
+    private void end(final int index) {
+        final T target = (T) mTargets[index];
+        final float alpha = mTo[index];
+        remove(index);
+        mApplier.setAlpha(target, alpha);
+        mApplier.onFadeEnd(target, alpha);
+    }
+
+    private int indexOf(final T target) {
+        for (int i = 0; i < mCount; i++) {
+            if (mTargets[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void remove(final int index) {
+        final int last = --mCount;
+        if (index != last) {
+            mTargets[index] = mTargets[last];
+            mFrom[index] = mFrom[last];
+            mTo[index] = mTo[last];
+            mStart[index] = mStart[last];
+        }
+        mTargets[last] = null;
+    }
+}
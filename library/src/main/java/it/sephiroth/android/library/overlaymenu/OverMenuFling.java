@@ -0,0 +1,136 @@
+package it.sephiroth.android.library.overlaymenu;
+
+/**
+ * Fling physics for the menu translation: the velocity decays exponentially and,
+ * once it falls below a threshold (or the scroll range ends), the translation eases
+ * onto the value returned by the {@link SnapTarget}.
+ * It is driven by the frame clock through {@link #step(long)} and never allocates.
+ */
+final class OverMenuFling {
+    static final int STATE_IDLE = 0;
+    static final int STATE_FLINGING = 1;
+    static final int STATE_SNAPPING = 2;
+
+    /** velocity decay rate, per second */
+    static final float DEFAULT_FRICTION = 4f;
+
+    /** time constant of the snap easing, in milliseconds */
+    static final float SNAP_TIME_CONSTANT = 60f;
+
+    interface SnapTarget {
+        /**
+         * @return the translation the given translation has to settle on
+         */
+        float getSnapTranslation(float translation);
+    }
+
+    private final SnapTarget mSnapTarget;
+    private final float mSnapVelocity;
+    private float mFriction = DEFAULT_FRICTION;
+    private int mState = STATE_IDLE;
+    private float mPosition;
+    private float mVelocity;
+    private float mTarget;
+    private float mMin;
+    private float mMax;
+    private long mLastTime;
+
+    /**
+     * @param snapTarget   provides the final translation
+     * @param snapVelocity velocity, in pixels per second, below which the fling starts snapping
+     */
+    OverMenuFling(final SnapTarget snapTarget, final float snapVelocity) {
+        mSnapTarget = snapTarget;
+        mSnapVelocity = snapVelocity;
+    }
+
+    void setFriction(final float friction) {
+        mFriction = friction;
+    }
+
+    /**
+     * @param position initial translation
+     * @param velocity initial velocity, in pixels per second
+     * @param min      minimum translation
+     * @param max      maximum translation
+     * @param timeMs   current frame time
+     */
+    void start(final float position, final float velocity, final float min, final float max, final long timeMs) {
+        mPosition = position;
+        mVelocity = velocity;
+        mMin = min;
+        mMax = max;
+        mLastTime = timeMs;
+        mState = STATE_FLINGING;
+
+        if (Math.abs(velocity) < mSnapVelocity) {
+            startSnap();
+        }
+    }
+
+    void stop() {
+        mState = STATE_IDLE;
+        mVelocity = 0;
+    }
+
+    boolean isRunning() {
+        return mState != STATE_IDLE;
+    }
+
+    int getState() {
+        return mState;
+    }
+
+    float getPosition() {
+        return mPosition;
+    }
+
+    float getVelocity() {
+        return mVelocity;
+    }
+
+    /**
+     * Advances the simulation to the given frame time
+     *
+     * @return true if the fling is still running
+     */
+    boolean step(final long timeMs) {
+        if (mState == STATE_IDLE) {
+            return false;
+        }
+
+        final float dt = Math.max(0, timeMs - mLastTime);
+        mLastTime = timeMs;
+
+        if (mState == STATE_FLINGING) {
+            final float decay = (float) Math.exp(-mFriction * dt / 1000f);
+            // integral of v * e^(-k * t) over the frame
+            mPosition += mVelocity * (1 - decay) / mFriction;
+            mVelocity *= decay;
+
+            if (mPosition <= mMin || mPosition >= mMax) {
+                mPosition = Math.min(Math.max(mPosition, mMin), mMax);
+                startSnap();
+            } else if (Math.abs(mVelocity) < mSnapVelocity) {
+                startSnap();
+            }
+            return true;
+        }
+
+        final float progress = 1 - (float) Math.exp(-dt / SNAP_TIME_CONSTANT);
+        mPosition += (mTarget - mPosition) * progress;
+
+        if (Math.abs(mTarget - mPosition) < 0.5f) {
+            mPosition = mTarget;
+            mState = STATE_IDLE;
+            return false;
+        }
+        return true;
+    }
+
+    private void startSnap() {
+        mVelocity = 0;
+        mTarget = mSnapTarget.getSnapTranslation(mPosition);
+        mState = STATE_SNAPPING;
+    }
+}
@@ -0,0 +1,85 @@
+package it.sephiroth.android.library.overlaymenu;
+
+import android.os.Parcel;
+import android.support.annotation.NonNull;
+
+/**
+ * Menu geometry saved with the view state: a recreated menu showing the same entries, with
+ * the same appearance and window width, can be positioned before its first layout pass.
+ */
+final class OverMenuGeometrySnapshot {
+    /** hash of the entries, text appearances and window width the geometry has been measured with */
+    final int key;
+    final int height;
+    final int padding;
+    final int gap;
+    final int textHeight;
+    final int count;
+    final int origin;
+    final int rowHeight;
+    /** top of every row plus the bottom of the last one, null if all the rows have the same height */
+    final int[] offsets;
+
+    OverMenuGeometrySnapshot(
+        final int key, final int height, final int padding, final int gap, final int textHeight,
+        @NonNull final OverMenuRowGeometry rows) {
+        this.key = key;
+        this.height = height;
+        this.padding = padding;
+        this.gap = gap;
+        this.textHeight = textHeight;
+        this.count = rows.getCount();
+        this.origin = count > 0 ? rows.getRowTop(0) : 0;
+
+        if (rows.isFixed() || count == 0) {
+            this.rowHeight = count > 0 ? rows.getRowBottom(0) - rows.getRowTop(0) : 0;
+            this.offsets = null;
+        } else {
+            this.rowHeight = 0;
+            this.offsets = new int[count + 1];
+            for (int i = 0; i < count; i++) {
+                offsets[i] = rows.getRowTop(i);
+            }
+            offsets[count] = rows.getRowBottom(count - 1);
+        }
+    }
+
+    private OverMenuGeometrySnapshot(@NonNull final Parcel in) {
+        key = in.readInt();
+        height = in.readInt();
+        padding = in.readInt();
+        gap = in.readInt();
+        textHeight = in.readInt();
+        count = in.readInt();
+        origin = in.readInt();
+        rowHeight = in.readInt();
+        offsets = in.createIntArray();
+    }
+
+    /**
+     * Applies the saved rows geometry
+     */
+    void restore(@NonNull final OverMenuRowGeometry rows) {
+        if (null == offsets) {
+            rows.setFixed(count, origin, rowHeight);
+        } else {
+            rows.setOffsets(offsets, count, offsets[count]);
+        }
+    }
+
+    void writeToParcel(@NonNull final Parcel out) {
+        out.writeInt(key);
+        out.writeInt(height);
+        out.writeInt(padding);
+        out.writeInt(gap);
+        out.writeInt(textHeight);
+        out.writeInt(count);
+        out.writeInt(origin);
+        out.writeInt(rowHeight);
+        out.writeIntArray(offsets);
+    }
+
+    static OverMenuGeometrySnapshot readFromParcel(@NonNull final Parcel in) {
+        return new OverMenuGeometrySnapshot(in);
+    }
+}
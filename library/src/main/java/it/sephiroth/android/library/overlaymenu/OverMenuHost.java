@@ -0,0 +1,224 @@
+package it.sephiroth.android.library.overlaymenu;
+
+import android.app.Activity;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.support.annotation.NonNull;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+import android.view.ViewGroup;
+import android.view.Gravity;
+import android.widget.FrameLayout;
+
+import static android.view.ViewGroup.LayoutParams.MATCH_PARENT;
+
+/**
+ * Owns the menu overlays of a window, shared by all the {@link OverMenuView} triggers in it.
+ * There is one overlay for every menu style in use: a trigger binds its entries, listeners and
+ * anchor to the overlay when it needs it, replacing the previous trigger, so the memory used
+ * doesn't depend on the number of triggers.
+ * An overlay is removed once all the triggers using it are detached, and the hidden overlays
+ * are dropped when the system is low on memory: they will be created again the next time they're needed.
+ */
+public final class OverMenuHost {
+    static final String TAG = "OverMenuHost";
+
+    private final FrameLayout mRoot;
+    private final SparseArray<OverMenuLayout> mOverlays = new SparseArray<OverMenuLayout>();
+    private final SparseArray<OverMenuView> mOwners = new SparseArray<OverMenuView>();
+    private final SparseIntArray mTriggers = new SparseIntArray();
+    private final Context mApplicationContext;
+    private boolean mCallbacksRegistered;
+
+    private OverMenuHost(@NonNull final FrameLayout root) {
+        mRoot = root;
+        mApplicationContext = root.getContext().getApplicationContext();
+    }
+
+    /**
+     * Returns the host of the activity window, creating it if needed
+     */
+    public static OverMenuHost get(@NonNull final Activity activity) {
+        final FrameLayout root = (FrameLayout) activity.getWindow().getDecorView();
+        OverMenuHost host = (OverMenuHost) root.getTag(R.id.OverMenuHost);
+        if (null == host) {
+            host = new OverMenuHost(root);
+            root.setTag(R.id.OverMenuHost, host);
+        }
+        return host;
+    }
+
+    /**
+     * The view the overlays are attached to
+     */
+    FrameLayout getRoot() {
+        return mRoot;
+    }
+
+    /**
+     * Binds the overlay of the given style to the trigger, unbinding the previous one
+     *
+     * @return the overlay, null if the previous trigger is showing its menu on it
+     */
+    OverMenuLayout bind(@NonNull final OverMenuView owner, final int menuStyle) {
+        final OverMenuView previous = mOwners.get(menuStyle);
+        if (null != previous && previous != owner && previous.isMenuShown()) {
+            return null;
+        }
+
+        final OverMenuLayout overlay = getOverlay(menuStyle);
+        if (previous != owner) {
+            if (null != previous) {
+                previous.onOverlayUnbound(overlay);
+            }
+            mOwners.put(menuStyle, owner);
+            owner.onOverlayBound(overlay);
+        }
+        return overlay;
+    }
+
+    /**
+     * Starts measuring the entries of a trigger with the text appearances of the given style, without
+     * binding the overlay: the trigger hands the result to the overlay when it binds.
+     * The overlay is not created here, triggers may measure their entries before being attached.
+     */
+    OverMenuTextLayouts precomputeText(final int menuStyle, @NonNull final OverMenuAdapter adapter) {
+        final OverMenuLayout overlay = mOverlays.get(menuStyle);
+        if (null != overlay) {
+            return overlay.startTextLayouts(adapter, null);
+        }
+        return OverMenuLayout.startTextLayouts(mRoot.getContext(), menuStyle, adapter);
+    }
+
+    private OverMenuLayout getOverlay(final int menuStyle) {
+        OverMenuLayout overlay = mOverlays.get(menuStyle);
+        if (null == overlay) {
+            overlay = createOverlay(menuStyle);
+            mOverlays.put(menuStyle, overlay);
+            registerCallbacks();
+        }
+        return overlay;
+    }
+
+    /**
+     * Unbinds the trigger from its overlay, if bound. The overlay is kept for the other triggers.
+     */
+    void unbind(@NonNull final OverMenuView owner) {
+        for (int i = mOwners.size() - 1; i >= 0; i--) {
+            if (mOwners.valueAt(i) == owner) {
+                final OverMenuLayout overlay = mOverlays.get(mOwners.keyAt(i));
+                mOwners.removeAt(i);
+                owner.onOverlayUnbound(overlay);
+            }
+        }
+    }
+
+    boolean hasOverlay(final int menuStyle) {
+        return null != mOverlays.get(menuStyle);
+    }
+
+    boolean isBound(@NonNull final OverMenuView owner, final int menuStyle) {
+        return mOwners.get(menuStyle) == owner;
+    }
+
+    /**
+     * A trigger using the given style has been attached to the window
+     */
+    void register(final int menuStyle) {
+        mTriggers.put(menuStyle, mTriggers.get(menuStyle) + 1);
+    }
+
+    /**
+     * A trigger using the given style has been detached: when it's the last one its overlay is released
+     */
+    void unregister(@NonNull final OverMenuView owner, final int menuStyle) {
+        unbind(owner);
+
+        final int count = mTriggers.get(menuStyle) - 1;
+        if (count > 0) {
+            mTriggers.put(menuStyle, count);
+            return;
+        }
+
+        mTriggers.delete(menuStyle);
+        final int index = mOverlays.indexOfKey(menuStyle);
+        if (index > -1) {
+            releaseOverlay(index);
+        }
+    }
+
+    /**
+     * Releases all the overlays not visible at the moment
+     */
+    void trimMemory() {
+        for (int i = mOverlays.size() - 1; i >= 0; i--) {
+            final OverMenuView owner = mOwners.get(mOverlays.keyAt(i));
+            if (null == owner || !owner.isMenuShown()) {
+                releaseOverlay(i);
+            }
+        }
+    }
+
+    private void releaseOverlay(final int index) {
+        final int menuStyle = mOverlays.keyAt(index);
+        final OverMenuLayout overlay = mOverlays.valueAt(index);
+        mOverlays.removeAt(index);
+
+        final OverMenuView owner = mOwners.get(menuStyle);
+        if (null != owner) {
+            mOwners.remove(menuStyle);
+            owner.onOverlayUnbound(overlay);
+        }
+
+        overlay.release();
+        if (null != overlay.getParent()) {
+            ((ViewGroup) overlay.getParent()).removeView(overlay);
+        }
+
+        if (mOverlays.size() == 0) {
+            unregisterCallbacks();
+        }
+    }
+
+    private void registerCallbacks() {
+        if (!mCallbacksRegistered) {
+            mApplicationContext.registerComponentCallbacks(mComponentCallbacks);
+            mCallbacksRegistered = true;
+        }
+    }
+
+    private void unregisterCallbacks() {
+        // registered on the application context: it must not keep the window alive
+        if (mCallbacksRegistered) {
+            mApplicationContext.unregisterComponentCallbacks(mComponentCallbacks);
+            mCallbacksRegistered = false;
+        }
+    }
+
+    private final ComponentCallbacks2 mComponentCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(final int level) {
+            if (level >= TRIM_MEMORY_RUNNING_LOW) {
+                trimMemory();
+            }
+        }
+
+        @Override
+        public void onConfigurationChanged(final Configuration newConfig) { }
+
+        @Override
+        public void onLowMemory() {
+            trimMemory();
+        }
+    };
+
+    private OverMenuLayout createOverlay(final int menuStyle) {
+        FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(MATCH_PARENT, MATCH_PARENT);
+        params.gravity = Gravity.CENTER;
+        OverMenuLayout overlay = new OverMenuLayout(mRoot.getContext(), null, 0, menuStyle);
+        overlay.setId(R.id.OverMenuId);
+        overlay.setLayoutParams(params);
+        return overlay;
+    }
+}
@@ -0,0 +1,457 @@
+package it.sephiroth.android.library.overlaymenu;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+import android.util.SparseArray;
+import android.widget.TextView;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Icons of the menu entries, see {@link OverMenuAdapter#getIconUri(int)}.
+ * Images are decoded and downsampled to the icon size on a background thread, then kept in a
+ * memory bounded cache shared by all the menus. Images which can't be decoded are remembered
+ * too, and not loaded again until the cache is cleared. Rows are bound to an icon only while visible:
+ * until the image is available they show an empty space of the same size. Binding an icon
+ * doesn't request a layout pass, nor allocates once the icon has been shown.
+ */
+public final class OverMenuIcons {
+    static final String TAG = "OverMenuIcons";
+
+    /** prefix of the uris pointing to the application assets */
+    public static final String ASSET_PREFIX = "file:///android_asset/";
+
+    static final int MAX_KEYS = 1024;
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    private static final HashMap<String, ArrayList<WeakReference<TextView>>> sPending =
+        new HashMap<String, ArrayList<WeakReference<TextView>>>();
+    private static IconCache sCache = new IconCache(getDefaultCacheSize());
+    /** cache keys by icon size and uri */
+    private static final SparseArray<LruCache<String, String>> sKeys = new SparseArray<LruCache<String, String>>();
+    /** cache keys of the icons which failed to decode */
+    private static final LruCache<String, Boolean> sFailed = new LruCache<String, Boolean>(MAX_KEYS);
+    private static boolean sCallbacksRegistered;
+
+    private OverMenuIcons() { }
+
+    /**
+     * Default cache size: 1/16th of the application heap
+     */
+    static int getDefaultCacheSize() {
+        return (int) (Runtime.getRuntime().maxMemory() / 16);
+    }
+
+    /**
+     * Sets the maximum size of the icons cache, in bytes. The cached icons are dropped.
+     * Must be called from the UI thread.
+     */
+    public static void setCacheSize(final int maxBytes) {
+        sCache.evictAll();
+        sCache = new IconCache(maxBytes);
+    }
+
+    /**
+     * Drops all the cached icons, the ones which failed to decode are loaded again when
+     * shown. Must be called from the UI thread.
+     */
+    public static void clearCache() {
+        sCache.evictAll();
+        sFailed.evictAll();
+    }
+
+    /**
+     * Shows the icon in the row, loading it if not in the cache
+     *
+     * @param uri  the icon uri, null to remove the icon
+     * @param size icon size, in pixels
+     */
+    static void bind(@NonNull final TextView row, final String uri, final int size) {
+        bind(row, uri, size, false);
+    }
+
+    /**
+     * Shows the icon in the row, loading it if not in the cache. Binding the icon already bound to the row
+     * doesn't allocate.
+     *
+     * @param uri      the icon uri, null to remove the icon
+     * @param size     icon size, in pixels
+     * @param keepSlot if true and the uri is null, the space of the icon is kept: used by the views showing
+     *                 the entries in turn, to avoid a layout pass when moving between entries with and without icon
+     */
+    static void bind(@NonNull final TextView row, final String uri, final int size, final boolean keepSlot) {
+        if (null == uri) {
+            final IconDrawable slot = getSlot(row);
+            if (null == slot) {
+                return;
+            }
+            if (keepSlot && slot.getBounds().width() == size) {
+                slot.clear();
+            } else {
+                row.setTag(R.id.OverMenuIcon, null);
+                row.setCompoundDrawables(null, null, null, null);
+            }
+            return;
+        }
+
+        final IconDrawable slot = setSlot(row, size);
+        if (uri.equals(slot.getUri())) {
+            if (slot.isBound() && (slot.hasBitmap() || slot.isLoading())) {
+                return;
+            }
+        } else {
+            slot.setUri(uri, getKey(uri, size));
+        }
+
+        final Bitmap bitmap = sCache.get(slot.getKey());
+        slot.bind(bitmap);
+        if (null == bitmap && !slot.isLoading() && null == sFailed.get(slot.getKey())) {
+            slot.setLoading(true);
+            load(row, uri, size, slot.getKey());
+        }
+    }
+
+    /**
+     * The row is not visible anymore: its icon is replaced by an empty space of the same size
+     */
+    static void unbind(@NonNull final TextView row, final int size) {
+        final IconDrawable slot = getSlot(row);
+        if (null != slot) {
+            slot.unbind();
+        }
+    }
+
+    /**
+     * Reserves the space of the icon, without loading it
+     */
+    static void setPlaceholder(@NonNull final TextView row, final int size) {
+        setSlot(row, size).unbind();
+    }
+
+    private static IconDrawable getSlot(@NonNull final TextView row) {
+        final Object tag = row.getTag(R.id.OverMenuIcon);
+        return tag instanceof IconDrawable ? (IconDrawable) tag : null;
+    }
+
+    /**
+     * The drawable showing the icons of the row. It's set only once, since changing the row
+     * drawables requests a new layout pass: binding an icon only changes its bitmap.
+     */
+    private static IconDrawable setSlot(@NonNull final TextView row, final int size) {
+        IconDrawable slot = getSlot(row);
+        if (null == slot || slot.getBounds().width() != size) {
+            slot = new IconDrawable();
+            slot.setBounds(0, 0, size, size);
+            row.setTag(R.id.OverMenuIcon, slot);
+            row.setCompoundDrawables(slot, null, null, null);
+        }
+        return slot;
+    }
+
+    /**
+     * Cache key of the icon, built only the first time the uri is shown with that size
+     */
+    private static String getKey(@NonNull final String uri, final int size) {
+        LruCache<String, String> keys = sKeys.get(size);
+        if (null == keys) {
+            keys = new LruCache<String, String>(MAX_KEYS);
+            sKeys.put(size, keys);
+        }
+
+        String key = keys.get(uri);
+        if (null == key) {
+            key = size + ":" + uri;
+            keys.put(uri, key);
+        }
+        return key;
+    }
+
+    private static void load(@NonNull final TextView row, @NonNull final String uri, final int size, @NonNull final String key) {
+        ArrayList<WeakReference<TextView>> targets = sPending.get(key);
+        if (null != targets) {
+            // already loading
+            targets.add(new WeakReference<TextView>(row));
+            return;
+        }
+
+        targets = new ArrayList<WeakReference<TextView>>();
+        targets.add(new WeakReference<TextView>(row));
+        sPending.put(key, targets);
+
+        final Context context = row.getContext().getApplicationContext();
+        registerCallbacks(context);
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(
+            new Runnable() {
+                @Override
+                public void run() {
+                    Bitmap bitmap = null;
+                    try {
+                        bitmap = decode(context, uri, size);
+                    } catch (IOException e) {
+                        Log.w(TAG, "failed to decode " + uri + ": " + e);
+                    } catch (RuntimeException e) {
+                        Log.w(TAG, "failed to decode " + uri + ": " + e);
+                    }
+
+                    final Bitmap result = bitmap;
+                    sMainHandler.post(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                onLoaded(key, result);
+                            }
+                        });
+                }
+            });
+    }
+
+    private static void onLoaded(@NonNull final String key, final Bitmap bitmap) {
+        final ArrayList<WeakReference<TextView>> targets = sPending.remove(key);
+        if (null == targets) {
+            return;
+        }
+
+        if (null != bitmap) {
+            sCache.put(key, bitmap);
+        } else {
+            sFailed.put(key, Boolean.TRUE);
+        }
+        for (int i = 0; i < targets.size(); i++) {
+            final TextView row = targets.get(i).get();
+            final IconDrawable slot = null != row ? getSlot(row) : null;
+            // rows bound to another icon in the meantime are skipped
+            if (null != slot && key.equals(slot.getKey())) {
+                slot.setLoading(false);
+                // rows scrolled out of the window only get the icon when bound again
+                if (null != bitmap && slot.isBound()) {
+                    slot.bind(bitmap);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes the image, downsampled and center cropped to a square of the given size
+     */
+    static Bitmap decode(@NonNull final Context context, @NonNull final String uri, final int size) throws IOException {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decodeStream(context, uri, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inSampleSize = getSampleSize(options.outWidth, options.outHeight, size);
+        options.inJustDecodeBounds = false;
+        final Bitmap bitmap = decodeStream(context, uri, options);
+        if (null == bitmap) {
+            return null;
+        }
+
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        final int side = Math.min(width, height);
+        if (width == height && side <= size) {
+            return bitmap;
+        }
+
+        final Matrix matrix = new Matrix();
+        if (side > size) {
+            final float scale = (float) size / side;
+            matrix.setScale(scale, scale);
+        }
+        final Bitmap result = Bitmap.createBitmap(bitmap, (width - side) / 2, (height - side) / 2, side, side, matrix, true);
+        if (result != bitmap) {
+            bitmap.recycle();
+        }
+        return result;
+    }
+
+    /**
+     * Largest power of two which keeps the image at least as big as the icon
+     */
+    static int getSampleSize(final int width, final int height, final int size) {
+        int sampleSize = 1;
+        while (Math.min(width, height) / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static Bitmap decodeStream(
+        @NonNull final Context context, @NonNull final String uri, @NonNull final BitmapFactory.Options options) throws IOException {
+        final InputStream input;
+        if (uri.startsWith(ASSET_PREFIX)) {
+            input = context.getAssets().open(uri.substring(ASSET_PREFIX.length()));
+        } else {
+            input = context.getContentResolver().openInputStream(Uri.parse(uri));
+        }
+
+        if (null == input) {
+            return null;
+        }
+
+        try {
+            return BitmapFactory.decodeStream(input, null, options);
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void registerCallbacks(@NonNull final Context context) {
+        if (!sCallbacksRegistered) {
+            sCallbacksRegistered = true;
+            context.registerComponentCallbacks(sComponentCallbacks);
+        }
+    }
+
+    private static final ComponentCallbacks2 sComponentCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(final int level) {
+            // the failures are tiny, they are kept
+            if (level >= TRIM_MEMORY_MODERATE) {
+                sCache.evictAll();
+            } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+                sCache.trimToSize(sCache.maxSize() / 2);
+            }
+        }
+
+        @Override
+        public void onConfigurationChanged(final Configuration newConfig) { }
+
+        @Override
+        public void onLowMemory() {
+            sCache.evictAll();
+        }
+    };
+
+    /**
+     * Draws the bitmap of the bound icon, if loaded, scaled to its bounds.
+     * The uri and its cache key are kept while the row is not visible, so binding it again doesn't allocate.
+     */
+    static final class IconDrawable extends Drawable {
+        private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        private String mUri;
+        private String mKey;
+        private Bitmap mBitmap;
+        private boolean mBound;
+        private boolean mLoading;
+
+        String getUri() {
+            return mUri;
+        }
+
+        String getKey() {
+            return mKey;
+        }
+
+        void setUri(final String uri, final String key) {
+            mUri = uri;
+            mKey = key;
+            mLoading = false;
+            setBitmap(null);
+        }
+
+        boolean isBound() {
+            return mBound;
+        }
+
+        boolean hasBitmap() {
+            return null != mBitmap;
+        }
+
+        boolean isLoading() {
+            return mLoading;
+        }
+
+        void setLoading(final boolean loading) {
+            mLoading = loading;
+        }
+
+        /**
+         * The row is visible, showing the bitmap if loaded
+         */
+        void bind(final Bitmap bitmap) {
+            mBound = true;
+            setBitmap(bitmap);
+        }
+
+        void unbind() {
+            mBound = false;
+            setBitmap(null);
+        }
+
+        /**
+         * Empty space, not bound to any icon
+         */
+        void clear() {
+            setUri(null, null);
+            mBound = false;
+        }
+
+        private void setBitmap(final Bitmap bitmap) {
+            if (mBitmap != bitmap) {
+                mBitmap = bitmap;
+                invalidateSelf();
+            }
+        }
+
+        @Override
+        public void draw(final Canvas canvas) {
+            if (null != mBitmap) {
+                canvas.drawBitmap(mBitmap, null, getBounds(), mPaint);
+            }
+        }
+
+        @Override
+        public void setAlpha(final int alpha) {
+            mPaint.setAlpha(alpha);
+            invalidateSelf();
+        }
+
+        @Override
+        public void setColorFilter(final ColorFilter colorFilter) {
+            mPaint.setColorFilter(colorFilter);
+            invalidateSelf();
+        }
+
+        @Override
+        public int getOpacity() {
+            return PixelFormat.TRANSLUCENT;
+        }
+    }
+
+    /**
+     * Sized by bitmap bytes
+     */
+    static final class IconCache extends LruCache<String, Bitmap> {
+        IconCache(final int maxBytes) {
+            super(Math.max(1, maxBytes));
+        }
+
+        @Override
+        protected int sizeOf(final String key, final Bitmap value) {
+            return value.getRowBytes() * value.getHeight();
+        }
+    }
+}
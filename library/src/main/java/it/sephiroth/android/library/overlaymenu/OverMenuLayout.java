@@ -2,21 +2,22 @@ package it.sephiroth.android.library.overlaymenu;
 
 import android.content.Context;
 import android.content.res.TypedArray;
-import android.graphics.Point;
-import android.graphics.Rect;
+import android.os.AsyncTask;
 import android.support.annotation.DrawableRes;
 import android.support.annotation.NonNull;
 import android.support.annotation.StyleRes;
+import android.support.v4.content.ContextCompat;
+import android.support.v4.view.ViewCompat;
 import android.text.TextUtils;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.view.Gravity;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewTreeObserver;
-import android.view.animation.AlphaAnimation;
+import android.view.WindowManager;
 import android.view.animation.Animation;
+import android.view.animation.AnimationUtils;
 import android.widget.FrameLayout;
 import android.widget.LinearLayout;
 import android.widget.TextSwitcher;
@@ -32,33 +33,81 @@ import static android.view.ViewGroup.LayoutParams.WRAP_CONTENT;
  */
 final class OverMenuLayout extends FrameLayout implements ViewSwitcher.ViewFactory {
     static final String TAG = "OverMenuLayout";
-    private LinearLayout menuLayout;
+    /** ratio between the finger movement and the menu translation */
+    static final float SCROLL_GAIN = 1.2f;
+    /** fling velocity (dp per second) below which the menu snaps to the closest entry */
+    static final float SNAP_VELOCITY_DIP = 120;
+    /** one view per entry */
+    static final int RENDERER_VIEWS = 0;
+    /** a single view drawing all the entries */
+    static final int RENDERER_CANVAS = 1;
+    /** size of the entries icons, if not set in the style */
+    static final float DEFAULT_ICON_SIZE_DIP = 24;
+    private View menuLayout;
     private TextSwitcher selectedTextView;
-    private CharSequence[] mEntries;
+    private OverMenuAdapter mAdapter;
+    private boolean mGeometryPending;
     private int mMenuTextAppearance;
     private int mSelectedTextAppearance;
     private int mItemsGap;
     private int mHeight;
-    private int mTop;
-    private int mBottom;
-    private int mMaxScroll;
-    private int mMinScroll;
-    private Point mCenter;
     private int mMenuTextGravity;
     private int mMenuTextPadding;
     private int mTextHeight;
     private int mDefaultPosition = -1;
     private boolean mAnimateItems;
+    private boolean mVirtualized;
+    private boolean mFixedRowHeight;
+    private boolean mCanvasRenderer;
+    private boolean mPrecomputeText;
+    private OverMenuTextLayouts mTextLayouts;
+    /** true if the text layouts belong to a trigger, which will reuse them: they're never cancelled here */
+    private boolean mTextLayoutsAdopted;
+    private boolean mSectionIndexEnabled;
+    private OverMenuSectionIndex mSectionIndex;
+    private OverMenuSectionStrip mSectionStrip;
+    private int mScrubSection = -1;
+    private int mTouchMode = OverMenuView.TOUCH_MODE_PER_EVENT;
+    private float mPendingScroll;
+    private boolean mTouchFrameScheduled;
+    private float mTouchVelocity;
+    private float mLastMoveY;
+    private long mLastMoveTime = -1;
+    private int mIconSize;
+    private int mIconFirst = -1;
+    private int mIconLast = -1;
     private int mTextSwitcherInAnimation = 0;
     private int mTextSwitcherOutAnimation = 0;
-    private final Rect tempRect = new Rect();
+    private final OverMenuScrollModel mScrollModel = new OverMenuScrollModel();
+    private final OverMenuRowGeometry mRowGeometry = mScrollModel.getRowGeometry();
+    private final OverMenuEntriesDiff mEntriesDiff = new OverMenuEntriesDiff();
+    private int[] mRowTops;
     private OverMenuView.OnSelectionChangeListener listener;
+    private OverMenuView.OnSelectionSettledListener settledListener;
+    private int mSelectionDispatch = OverMenuView.SELECTION_DISPATCH_IMMEDIATE;
+    private boolean mSelectionPending;
+    private boolean mDispatchScheduled;
+    private OverMenuMetricsListener mMetrics;
+    private float mFrameIntervalMs;
+    private long mLayoutPassNanos;
+    private int mLayoutPasses;
+    private long mLastFrameTime;
+    private int mGestureFrames;
+    private int mGestureDroppedFrames;
+    private int mGestureSelections;
     private int mMenuBackground = 0;
     private int paddingLeft = 0;
     private int paddingRight = 0;
     private int paddingTop = 0;
     private int paddingBottom = 0;
     private int mSelectedTextBackground;
+    private OverMenuFling mFling;
+    private Runnable mFlingEndAction;
+    private boolean mFadeScheduled;
+    private int mLayerPolicy = OverMenuView.LAYER_POLICY_ALWAYS;
+    private boolean mLayersEnabled;
+    private boolean mOverlayAnimating;
+    private boolean mScrolling;
 
     public OverMenuLayout(final Context context) {
         this(context, null);
@@ -80,23 +129,17 @@ final class OverMenuLayout extends FrameLayout implements ViewSwitcher.ViewFacto
     private void initialize(final Context context, final AttributeSet attrs, final int defStyleAttr, final int defStyleRes) {
         TypedArray array = context.obtainStyledAttributes(attrs, R.styleable.OverMenuLayout, defStyleAttr, defStyleRes);
 
-        int textAppearance = R.style.TextAppearance_AppCompat;
-        int selectedTextAppearance = textAppearance;
-        int itemsGap = 0;
-        int textGravity = Gravity.CENTER;
-        int textPadding = 0;
+        final RowStyle rowStyle = new RowStyle(context);
         int selectedTextBackground = R.drawable.overmenu_selectedtext_background;
 
         final int N = array.getIndexCount();
         for (int i = 0; i < N; i++) {
             int attr = array.getIndex(i);
-            if (attr == R.styleable.OverMenuLayout_overmenu_textAppearance) {
-                textAppearance = array.getResourceId(attr, 0);
-
-            } else if (attr == R.styleable.OverMenuLayout_overmenu_selectedTextAppearance) {
-                selectedTextAppearance = array.getResourceId(attr, 0);
+            if (rowStyle.read(array, attr)) {
+                continue;
+            }
 
-            } else if (attr == R.styleable.OverMenuLayout_overmenu_selectedTextBackground) {
+            if (attr == R.styleable.OverMenuLayout_overmenu_selectedTextBackground) {
                 selectedTextBackground = array.getResourceId(attr, R.drawable.overmenu_selectedtext_background);
 
             } else if (attr == R.styleable.OverMenuLayout_android_background) {
@@ -120,15 +163,6 @@ final class OverMenuLayout extends FrameLayout implements ViewSwitcher.ViewFacto
             } else if (attr == R.styleable.OverMenuLayout_android_paddingBottom) {
                 paddingBottom = array.getDimensionPixelSize(attr, 0);
 
-            } else if (attr == R.styleable.OverMenuLayout_android_verticalGap) {
-                itemsGap = array.getDimensionPixelSize(attr, 0);
-
-            } else if (attr == R.styleable.OverMenuLayout_overmenu_textGravity) {
-                textGravity = array.getInt(attr, Gravity.CENTER);
-
-            } else if (attr == R.styleable.OverMenuLayout_overmenu_textPaddingHorizontal) {
-                textPadding = array.getDimensionPixelSize(attr, 0);
-
             } else if (attr == R.styleable.OverMenuLayout_overmenu_selectedPosition) {
                 mDefaultPosition = array.getInteger(attr, -1);
 
@@ -141,21 +175,54 @@ final class OverMenuLayout extends FrameLayout implements ViewSwitcher.ViewFacto
             } else if (attr == R.styleable.OverMenuLayout_overmenu_animateItems) {
                 mAnimateItems = array.getBoolean(attr, true);
 
+            } else if (attr == R.styleable.OverMenuLayout_overmenu_virtualized) {
+                mVirtualized = array.getBoolean(attr, false);
+
+            } else if (attr == R.styleable.OverMenuLayout_overmenu_precomputeText) {
+                mPrecomputeText = array.getBoolean(attr, false);
+
+            } else if (attr == R.styleable.OverMenuLayout_overmenu_layerPolicy) {
+                mLayerPolicy = array.getInt(attr, OverMenuView.LAYER_POLICY_ALWAYS);
+
+            } else if (attr == R.styleable.OverMenuLayout_overmenu_selectionDispatch) {
+                mSelectionDispatch = array.getInt(attr, OverMenuView.SELECTION_DISPATCH_IMMEDIATE);
+
+            } else if (attr == R.styleable.OverMenuLayout_overmenu_sectionIndex) {
+                mSectionIndexEnabled = array.getBoolean(attr, false);
+
+            } else if (attr == R.styleable.OverMenuLayout_overmenu_touchMode) {
+                mTouchMode = array.getInt(attr, OverMenuView.TOUCH_MODE_PER_EVENT);
+
+            } else if (attr == R.styleable.OverMenuLayout_overmenu_fixedRowHeight) {
+                mFixedRowHeight = array.getBoolean(attr, false);
+
             }
         }
 
         array.recycle();
 
-        setMenuTextPadding(textPadding);
-        setMenuTextGravity(textGravity);
-        setMenuTextAppearance(textAppearance);
-        setSelectedTextAppearance(selectedTextAppearance);
+        setMenuTextPadding(rowStyle.textPadding);
+        setMenuTextGravity(rowStyle.textGravity);
+        setMenuTextAppearance(rowStyle.textAppearance);
+        setSelectedTextAppearance(rowStyle.selectedTextAppearance);
         setSelectedTextBackground(selectedTextBackground);
-        setItemsGap(itemsGap);
+        setItemsGap(rowStyle.itemsGap);
+        mIconSize = rowStyle.iconSize;
+        mCanvasRenderer = rowStyle.canvasRenderer;
 
+        mLayersEnabled = mLayerPolicy == OverMenuView.LAYER_POLICY_ALWAYS;
         initializeMenu(context);
 
+        mFling = new OverMenuFling(mScrollModel, SNAP_VELOCITY_DIP * getResources().getDisplayMetrics().density);
         setWillNotDraw(true);
+
+        final WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        final float refreshRate = windowManager.getDefaultDisplay().getRefreshRate();
+        mFrameIntervalMs = 1000f / (refreshRate > 0 ? refreshRate : 60);
+
+        if (mSectionIndexEnabled) {
+            initializeSectionStrip(context);
+        }
     }
 
     private void setSelectedTextBackground(@DrawableRes final int resId) {
@@ -163,20 +230,41 @@ final class OverMenuLayout extends FrameLayout implements ViewSwitcher.ViewFacto
     }
 
     private void initializeMenu(@NonNull final Context context) {
-        menuLayout = new LinearLayout(context);
-        menuLayout.setOrientation(LinearLayout.VERTICAL);
-        menuLayout.setMeasureWithLargestChildEnabled(true);
+        if (mCanvasRenderer) {
+            menuLayout = new OverMenuCanvasView(
+                context, makeRow(), (TextView) makeView(),
+                mSelectedTextBackground != 0 ? ContextCompat.getDrawable(context, mSelectedTextBackground) : null);
+        } else if (mVirtualized) {
+            // no hardware layer here: the layout is as tall as all the entries together
+            menuLayout = new OverMenuVirtualLayout(context, mRowFactory);
+        } else if (mFixedRowHeight) {
+            menuLayout = new OverMenuRowsLayout(context, mMenuTextAppearance);
+            menuLayout.setLayerType(mLayersEnabled ? LAYER_TYPE_HARDWARE : LAYER_TYPE_NONE, null);
+        } else {
+            LinearLayout linearLayout = new LinearLayout(context);
+            linearLayout.setOrientation(LinearLayout.VERTICAL);
+            linearLayout.setMeasureWithLargestChildEnabled(true);
+            linearLayout.setLayerType(mLayersEnabled ? LAYER_TYPE_HARDWARE : LAYER_TYPE_NONE, null);
+            menuLayout = linearLayout;
+        }
+
         if (mMenuBackground != 0) {
             menuLayout.setBackgroundResource(mMenuBackground);
         }
         menuLayout.setPadding(paddingLeft, paddingTop, paddingRight, paddingBottom);
-        menuLayout.setLayerType(LAYER_TYPE_HARDWARE, null);
 
         LayoutParams params = new LayoutParams(WRAP_CONTENT, WRAP_CONTENT);
         params.gravity = Gravity.CENTER;
         addView(menuLayout, params);
     }
 
+    private void initializeSectionStrip(@NonNull final Context context) {
+        mSectionStrip = new OverMenuSectionStrip(context, makeRow().getPaint(), ((TextView) makeView()).getPaint());
+        LayoutParams params = new LayoutParams(WRAP_CONTENT, MATCH_PARENT);
+        params.gravity = Gravity.RIGHT;
+        addView(mSectionStrip, params);
+    }
+
     private void initializeTextSwitcher(@NonNull final Context context) {
         selectedTextView = new TextSwitcher(getContext());
         selectedTextView.setFactory(this);
@@ -194,7 +282,7 @@ final class OverMenuLayout extends FrameLayout implements ViewSwitcher.ViewFacto
         LayoutParams params = new LayoutParams(WRAP_CONTENT, WRAP_CONTENT);
         params.gravity = Gravity.CENTER;
         selectedTextView.setLayoutParams(params);
-        selectedTextView.setLayerType(LAYER_TYPE_HARDWARE, null);
+        selectedTextView.setLayerType(mLayersEnabled ? LAYER_TYPE_HARDWARE : LAYER_TYPE_NONE, null);
         addView(selectedTextView);
     }
 
@@ -206,17 +294,90 @@ final class OverMenuLayout extends FrameLayout implements ViewSwitcher.ViewFacto
         return listener;
     }
 
+    public void setOnSelectionSettledListener(final OverMenuView.OnSelectionSettledListener listener) {
+        this.settledListener = listener;
+    }
+
+    public OverMenuView.OnSelectionSettledListener getOnSelectionSettledListener() {
+        return settledListener;
+    }
+
+    public void setSelectionDispatch(final int mode) {
+        mSelectionDispatch = mode;
+        if (mode == OverMenuView.SELECTION_DISPATCH_IMMEDIATE) {
+            flushSelectionChanged();
+        }
+    }
+
+    public int getSelectionDispatch() {
+        return mSelectionDispatch;
+    }
+
+    void setTouchMode(final int mode) {
+        if (mTouchMode != mode) {
+            applyPendingScroll(false);
+            mTouchMode = mode;
+        }
+    }
+
+    int getTouchMode() {
+        return mTouchMode;
+    }
+
+    void setMetricsListener(final OverMenuMetricsListener metrics) {
+        mMetrics = metrics;
+        if (null == metrics) {
+            removeCallbacks(mMetricsFrame);
+        }
+    }
+
+    OverMenuMetricsListener getMetricsListener() {
+        return mMetrics;
+    }
+
     @Override
     public View makeView() {
-        TextView textView = new TextView(getContext());
-        textView.setTextAppearance(getContext(), mSelectedTextAppearance);
-        textView.setGravity(mMenuTextGravity);
-        textView.setPadding(mMenuTextPadding, mItemsGap, mMenuTextPadding, mItemsGap);
+        return makeTextView(getContext(), mSelectedTextAppearance, mMenuTextGravity, mMenuTextPadding, mItemsGap, mIconSize);
+    }
+
+    private TextView makeRow() {
+        return makeTextView(getContext(), mMenuTextAppearance, mMenuTextGravity, mMenuTextPadding, mItemsGap, mIconSize);
+    }
+
+    private static TextView makeTextView(
+        final Context context, @StyleRes final int textAppearance, final int gravity, final int textPadding, final int itemsGap,
+        final int iconSize) {
+        TextView textView = new TextView(context);
+        textView.setTextAppearance(context, textAppearance);
+        textView.setGravity(gravity);
+        textView.setPadding(textPadding, itemsGap, textPadding, itemsGap);
         textView.setSingleLine(true);
         textView.setEllipsize(TextUtils.TruncateAt.END);
+        textView.setCompoundDrawablePadding(iconSize / 4);
         return textView;
     }
 
+    private final OverMenuVirtualLayout.RowFactory mRowFactory = new OverMenuVirtualLayout.RowFactory() {
+        @Override
+        public TextView createRow() {
+            return makeRow();
+        }
+
+        @Override
+        public void bindRow(final TextView row, final int position) {
+            row.setText(mAdapter.getItem(position));
+            // virtual rows only exist while visible
+            bindIcon(row, position);
+        }
+
+        @Override
+        public void onRowRecycled(final TextView row) {
+            mRowFader.cancel(row);
+            row.setAlpha(1);
+            OverMenuIcons.unbind(row, mIconSize);
+        }
+    };
+
     private void setMenuTextPadding(final int textPadding) {
         mMenuTextPadding = textPadding;
     }
@@ -237,90 +398,935 @@ final class OverMenuLayout extends FrameLayout implements ViewSwitcher.ViewFacto
         mSelectedTextAppearance = resId;
     }
 
-    public void setEntries(CharSequence[] entries) {
-
-        if (entries == mEntries) {
+    public void setAdapter(final OverMenuAdapter adapter) {
+        if (adapter == mAdapter) {
             return;
         }
 
+        final boolean traced = OverMenuTrace.beginSection(OverMenuTrace.SECTION_SET_ENTRIES);
+        if (null != mMetrics) {
+            final long start = System.nanoTime();
+            swapAdapter(adapter);
+            mMetrics.onEntriesChanged(getCount(), System.nanoTime() - start);
+        } else {
+            swapAdapter(adapter);
+        }
+        OverMenuTrace.record(OverMenuTrace.EVENT_ENTRIES, getCount());
+        OverMenuTrace.endSection(traced);
+    }
+
+    private void swapAdapter(final OverMenuAdapter adapter) {
+        final OverMenuAdapter oldAdapter = mAdapter;
+
+        if (null != oldAdapter) {
+            oldAdapter.unregisterObserver(mAdapterObserver);
+        }
+
+        mAdapter = adapter;
+
+        if (null != mAdapter) {
+            mAdapter.registerObserver(mAdapterObserver);
+        }
+
+        if (null == mTextLayouts || !mTextLayouts.isFor(mAdapter)) {
+            precomputeText(mAdapter);
+        }
+        buildSectionIndex(mAdapter);
+
+        if (null != oldAdapter && null != mAdapter && null != selectedTextView && null != menuLayout && !mCanvasRenderer) {
+            applyDiff(oldAdapter, mAdapter);
+        } else {
+            rebuild();
+        }
+    }
+
+    /**
+     * Same as {@link #setAdapter(OverMenuAdapter)}, reusing the text layouts previously
+     * computed for the adapter, or still being computed
+     */
+    void setAdapter(final OverMenuAdapter adapter, final OverMenuTextLayouts textLayouts) {
+        if (null != textLayouts && textLayouts != mTextLayouts && textLayouts.isFor(adapter)
+            && (textLayouts.isReady() || !textLayouts.isCancelled())) {
+            releaseTextLayouts();
+            mTextLayouts = textLayouts;
+            mTextLayoutsAdopted = true;
+            if (!textLayouts.isReady()) {
+                textLayouts.setCallback(mTextLayoutsCallback);
+            }
+        }
+        setAdapter(adapter);
+    }
+
+    /**
+     * The text layouts of the current entries, if computed
+     */
+    OverMenuTextLayouts getTextLayouts() {
+        return null != mTextLayouts && mTextLayouts.isReady() && mTextLayouts.isFor(mAdapter) ? mTextLayouts : null;
+    }
+
+    /**
+     * Rows have been added, removed or became wider: with fixed row height their size is computed again
+     */
+    private void invalidateRowSize() {
+        if (mFixedRowHeight && !mVirtualized && !mCanvasRenderer) {
+            ((OverMenuRowsLayout) menuLayout).invalidateRowSize();
+        }
+    }
+
+    /**
+     * The container of the rows, when they are all views
+     */
+    private ViewGroup getRowsLayout() {
+        return (ViewGroup) menuLayout;
+    }
+
+    /**
+     * Updates the existing rows and the selected text with the new entries, instead of
+     * rebuilding the whole menu. The geometry is only computed again if the number of rows
+     * or their size changed.
+     */
+    private void applyDiff(@NonNull final OverMenuAdapter oldAdapter, @NonNull final OverMenuAdapter newAdapter) {
+        final OverMenuEntriesDiff diff = mEntriesDiff;
+        diff.compute(oldAdapter, newAdapter);
+        final int oldCount = diff.getOldCount();
+        final int newCount = diff.getNewCount();
+        boolean sizeChanged = diff.isCountChanged();
+
+        if (!mVirtualized) {
+            // rows keep their position, but not their entry
+            unbindVisibleIcons();
+        }
+
+        for (int k = 0; k < diff.getChangedCount(); k++) {
+            final int i = diff.getChangedPosition(k);
+            TextView row = getRowView(i);
+            if (null != row) {
+                final CharSequence text = newAdapter.getItem(i);
+                sizeChanged |= !fitsRow(row, text) || (null == oldAdapter.getIconUri(i)) != (null == newAdapter.getIconUri(i));
+                row.setText(text);
+                refreshIcon(row, i);
+            }
+        }
+
+        if (mVirtualized) {
+            OverMenuVirtualLayout virtualLayout = (OverMenuVirtualLayout) menuLayout;
+            if (oldCount != newCount) {
+                virtualLayout.onCountChanged(newCount);
+            }
+
+            // the rows share the size of the widest entry, which may have no row on screen
+            if (sizeChanged || diff.getChangedCount() > 0) {
+                final int representative = findRepresentativePosition(newAdapter);
+                if (representative != virtualLayout.getRepresentativePosition() || diff.isChanged(representative)) {
+                    virtualLayout.setRepresentativePosition(representative);
+                    virtualLayout.invalidateRowSize();
+                    sizeChanged = true;
+                }
+            }
+        } else if (newCount > oldCount) {
+            for (int i = oldCount; i < newCount; i++) {
+                getRowsLayout().addView(makeBoundRow(i));
+            }
+        } else if (newCount < oldCount) {
+            getRowsLayout().removeViews(newCount, oldCount - newCount);
+        }
+
+        if (mCurrentPosition >= newCount) {
+            mCurrentPosition = -1;
+            mDefaultPosition = newCount - 1;
+        } else if (mCurrentPosition > -1 && diff.isChanged(mCurrentPosition)) {
+            selectedTextView.setCurrentText(newAdapter.getItem(mCurrentPosition));
+            bindSelectedIcon((TextView) selectedTextView.getCurrentView(), mCurrentPosition);
+        }
+
+        if (mVirtualized) {
+            ((OverMenuVirtualLayout) menuLayout).setHiddenPosition(mCurrentPosition);
+        }
+
+        if (sizeChanged) {
+            invalidateRowSize();
+            if (oldCount == newCount) {
+                // a wider entry, rows are not added or removed
+                menuLayout.requestLayout();
+            }
+            requestGeometryUpdate();
+        } else if (!mGeometryPending) {
+            updateVisibleIcons(mScrollModel.getTranslation());
+        }
+    }
+
+    /**
+     * The entry giving the size of the virtualized rows: the widest one if the text
+     * layouts are ready, the longest one otherwise
+     */
+    private int findRepresentativePosition(final OverMenuAdapter adapter) {
+        if (null != mTextLayouts && mTextLayouts.isReady() && mTextLayouts.isFor(adapter)) {
+            return mTextLayouts.getWidestPosition();
+        }
+        return OverMenuEntriesDiff.findLongestEntry(adapter);
+    }
+
+    /**
+     * Returns true if the text can be displayed in the row without changing its size
+     */
+    private static boolean fitsRow(@NonNull final TextView row, final CharSequence text) {
+        if (row.getWidth() == 0 || null == text) {
+            return true;
+        }
+        final int available = row.getWidth() - (row.getTotalPaddingLeft() + row.getTotalPaddingRight());
+        return row.getPaint().measureText(text, 0, text.length()) <= available;
+    }
+
+    boolean isGeometryPending() {
+        return mGeometryPending;
+    }
+
+    public OverMenuAdapter getAdapter() {
+        return mAdapter;
+    }
+
+    private int getCount() {
+        return null != mAdapter ? mAdapter.getCount() : 0;
+    }
+
+    private void rebuild() {
+        mRowFader.finish();
         mCurrentPosition = -1;
-        mCurrentSelectedTextView = null;
+        mIconFirst = mIconLast = -1;
+        mRowGeometry.clear();
 
         if (null != selectedTextView) {
             removeView(selectedTextView);
             selectedTextView = null;
         }
 
+        if (mCanvasRenderer) {
+            OverMenuCanvasView canvasView = (OverMenuCanvasView) menuLayout;
+            canvasView.setAdapter(mAdapter);
+            if (null != mTextLayouts) {
+                canvasView.setTextLayouts(mTextLayouts);
+            }
+            if (null != mAdapter) {
+                requestGeometryUpdate();
+            }
+            return;
+        }
+
         initializeTextSwitcher(getContext());
-        menuLayout.removeAllViews();
-        mEntries = entries;
 
-        if (null == mEntries) {
+        if (mVirtualized) {
+            OverMenuVirtualLayout virtualLayout = (OverMenuVirtualLayout) menuLayout;
+            virtualLayout.setCount(getCount());
+            virtualLayout.setRepresentativePosition(findRepresentativePosition(mAdapter));
+        } else {
+            getRowsLayout().removeAllViews();
+        }
+
+        if (null == mAdapter) {
             return;
         }
 
-        LayoutParams params;
+        if (!mVirtualized) {
+            final int count = mAdapter.getCount();
+            for (int i = 0; i < count; i++) {
+                getRowsLayout().addView(makeBoundRow(i));
+            }
+            invalidateRowSize();
+        }
+
+        requestGeometryUpdate();
+    }
 
-        for (CharSequence string : entries) {
-            TextView textView = (TextView) makeView();
-            textView.setTextAppearance(getContext(), mMenuTextAppearance);
-            textView.setText(string);
-            params = new LayoutParams(MATCH_PARENT, WRAP_CONTENT);
-            textView.setLayoutParams(params);
-            menuLayout.addView(textView);
+    public void setPrecomputeText(final boolean value) {
+        if (mPrecomputeText != value) {
+            mPrecomputeText = value;
+            precomputeText(mAdapter);
         }
+    }
 
-        menuLayout.getViewTreeObserver().addOnGlobalLayoutListener(
-            new ViewTreeObserver.OnGlobalLayoutListener() {
-                @Override
-                public void onGlobalLayout() {
-                    menuLayout.getViewTreeObserver().removeGlobalOnLayoutListener(this);
-
-                    mHeight = menuLayout.getHeight();
-                    mTop = menuLayout.getTop();
-                    mBottom = menuLayout.getBottom();
-                    mTextHeight =
-                        selectedTextView.getHeight();
-
-                    int padding = menuLayout.getPaddingBottom() + menuLayout.getPaddingTop();
-                    mMaxScroll = (mHeight / 2) - (padding + mItemsGap * 2);
-                    mMinScroll = -mMaxScroll;
-                    mCenter = new Point(menuLayout.getWidth() / 2, mHeight / 2);
-
-                    if (OverMenuView.DEBUG) {
-                        Log.v(TAG, "padding: " + padding);
-                        Log.v(TAG, "top: " + mTop);
-                        Log.v(TAG, "bottom: " + mBottom);
-                        Log.v(TAG, "textHeight: " + mTextHeight);
-                        Log.v(TAG, "maxScroll: " + mMaxScroll);
-                        Log.v(TAG, "minScroll: " + mMinScroll);
-                        Log.v(TAG, "center: " + mCenter);
-                        Log.v(TAG, "defaultPosition: " + mDefaultPosition);
-                        Log.v(TAG, "currentPosition: " + mCurrentPosition);
-                    }
+    public boolean getPrecomputeText() {
+        return mPrecomputeText;
+    }
+
+    /**
+     * Releases the adapter and the background work, before the overlay is dropped
+     */
+    void release() {
+        stopFling();
+        if (null != mAdapter) {
+            mAdapter.unregisterObserver(mAdapterObserver);
+            mAdapter = null;
+        }
+        releaseTextLayouts();
+        if (null != mSectionIndex) {
+            mSectionIndex.cancel();
+            mSectionIndex = null;
+        }
+    }
+
+    /**
+     * If text precomputation is enabled, measures and lays out the entries text on a background
+     * thread, using the menu and selected text appearances. The previous computation is dropped.
+     * The canvas renderer always needs them: it draws the layouts and takes its width from them.
+     */
+    void precomputeText(final OverMenuAdapter adapter) {
+        releaseTextLayouts();
+
+        if (!(mPrecomputeText || mCanvasRenderer) || null == adapter) {
+            return;
+        }
+
+        mTextLayouts = startTextLayouts(adapter, mTextLayoutsCallback);
+    }
+
+    /**
+     * Starts measuring the entries text on a background thread, using the text appearances of this overlay.
+     * The text layouts are only kept by the canvas renderer, which draws them.
+     *
+     * @param callback invoked once ready, can be null
+     */
+    OverMenuTextLayouts startTextLayouts(@NonNull final OverMenuAdapter adapter, final OverMenuTextLayouts.Callback callback) {
+        final OverMenuTextLayouts textLayouts = new OverMenuTextLayouts(
+            adapter, makeRow(), (TextView) makeView(), mMenuTextPadding, mCanvasRenderer);
+        textLayouts.execute(AsyncTask.THREAD_POOL_EXECUTOR, callback);
+        return textLayouts;
+    }
+
+    /**
+     * Same as {@link #startTextLayouts(OverMenuAdapter, OverMenuTextLayouts.Callback)}, reading the
+     * text appearances from the menu style: the overlay doesn't need to exist
+     */
+    static OverMenuTextLayouts startTextLayouts(
+        @NonNull final Context context, @StyleRes final int menuStyle, @NonNull final OverMenuAdapter adapter) {
+        final TypedArray array = context.obtainStyledAttributes(null, R.styleable.OverMenuLayout, 0, menuStyle);
+        final RowStyle style = new RowStyle(context);
+        final int N = array.getIndexCount();
+        for (int i = 0; i < N; i++) {
+            style.read(array, array.getIndex(i));
+        }
+        array.recycle();
+
+        final OverMenuTextLayouts textLayouts = new OverMenuTextLayouts(
+            adapter,
+            makeTextView(context, style.textAppearance, style.textGravity, style.textPadding, style.itemsGap, style.iconSize),
+            makeTextView(context, style.selectedTextAppearance, style.textGravity, style.textPadding, style.itemsGap, style.iconSize),
+            style.textPadding, style.canvasRenderer);
+        textLayouts.execute(AsyncTask.THREAD_POOL_EXECUTOR, null);
+        return textLayouts;
+    }
+
+    /**
+     * The style attributes the rows and the text layouts depend on
+     */
+    private static final class RowStyle {
+        int textAppearance = R.style.TextAppearance_AppCompat;
+        int selectedTextAppearance = textAppearance;
+        int textGravity = Gravity.CENTER;
+        int textPadding;
+        int itemsGap;
+        int iconSize;
+        boolean canvasRenderer;
+
+        RowStyle(@NonNull final Context context) {
+            iconSize = Math.round(DEFAULT_ICON_SIZE_DIP * context.getResources().getDisplayMetrics().density);
+        }
+
+        /**
+         * @return true if the attribute is one of the rows
+         */
+        boolean read(@NonNull final TypedArray array, final int attr) {
+            if (attr == R.styleable.OverMenuLayout_overmenu_textAppearance) {
+                textAppearance = array.getResourceId(attr, 0);
 
-                    ViewGroup.LayoutParams params1 = selectedTextView.getLayoutParams();
-                    params1.width = menuLayout.getWidth() - (menuLayout.getPaddingLeft() + menuLayout.getPaddingRight());
-                    selectedTextView.setLayoutParams(params1);
+            } else if (attr == R.styleable.OverMenuLayout_overmenu_selectedTextAppearance) {
+                selectedTextAppearance = array.getResourceId(attr, 0);
 
-                    int selectedPosition = mDefaultPosition;
-                    if (selectedPosition < 0 || selectedPosition > mEntries.length - 1) {
-                        selectedPosition = mEntries.length / 2;
+            } else if (attr == R.styleable.OverMenuLayout_overmenu_textGravity) {
+                textGravity = array.getInt(attr, Gravity.CENTER);
+
+            } else if (attr == R.styleable.OverMenuLayout_overmenu_textPaddingHorizontal) {
+                textPadding = array.getDimensionPixelSize(attr, 0);
+
+            } else if (attr == R.styleable.OverMenuLayout_android_verticalGap) {
+                itemsGap = array.getDimensionPixelSize(attr, 0);
+
+            } else if (attr == R.styleable.OverMenuLayout_overmenu_iconSize) {
+                iconSize = array.getDimensionPixelSize(attr, iconSize);
+
+            } else if (attr == R.styleable.OverMenuLayout_overmenu_renderer) {
+                canvasRenderer = array.getInt(attr, RENDERER_VIEWS) == RENDERER_CANVAS;
+
+            } else {
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Drops the current text layouts, cancelling them unless a trigger owns them
+     */
+    private void releaseTextLayouts() {
+        if (null != mTextLayouts) {
+            if (mTextLayoutsAdopted) {
+                mTextLayouts.setCallback(null);
+            } else {
+                mTextLayouts.cancel();
+            }
+            mTextLayouts = null;
+            mTextLayoutsAdopted = false;
+        }
+    }
+
+    /**
+     * Entries changed in place: the text layouts, once ready, only lay out those entries again,
+     * otherwise they are computed again
+     *
+     * @return true if the widest entry became wider
+     */
+    private boolean updateTextLayouts(final int positionStart, final int itemCount) {
+        if (null != mTextLayouts && mTextLayouts.isReady() && mTextLayouts.isFor(mAdapter)) {
+            return mTextLayouts.update(positionStart, itemCount);
+        }
+        precomputeText(mAdapter);
+        return false;
+    }
+
+    private final OverMenuTextLayouts.Callback mTextLayoutsCallback = new OverMenuTextLayouts.Callback() {
+        @Override
+        public void onTextLayoutsReady(@NonNull final OverMenuTextLayouts layouts) {
+            if (null == menuLayout || !layouts.isFor(mAdapter)) {
+                return;
+            }
+
+            if (mCanvasRenderer) {
+                ((OverMenuCanvasView) menuLayout).setTextLayouts(layouts);
+            } else if (mVirtualized) {
+                // widest entry by measured width, used if the rows have not been measured yet
+                ((OverMenuVirtualLayout) menuLayout).setRepresentativePosition(layouts.getWidestPosition());
+            }
+        }
+    };
+
+    /**
+     * Shows the sections strip and indexes the entries, which are expected to be sorted
+     */
+    void setSectionIndexEnabled(final boolean enabled) {
+        if (mSectionIndexEnabled == enabled) {
+            return;
+        }
+
+        mSectionIndexEnabled = enabled;
+        if (enabled && null == mSectionStrip) {
+            initializeSectionStrip(getContext());
+        }
+        if (null != mSectionStrip) {
+            mSectionStrip.setVisibility(enabled ? View.VISIBLE : View.GONE);
+        }
+        buildSectionIndex(mAdapter);
+    }
+
+    boolean isSectionIndexEnabled() {
+        return mSectionIndexEnabled;
+    }
+
+    /**
+     * Entries changed in place: the index is built again only if their sections changed
+     */
+    private void updateSectionIndex(final int positionStart, final int itemCount) {
+        if (null != mSectionIndex && mSectionIndex.isReady() && mSectionIndex.isFor(mAdapter)
+            && mSectionIndex.update(positionStart, itemCount)) {
+            return;
+        }
+        buildSectionIndex(mAdapter);
+    }
+
+    /**
+     * Indexes the entries on a background thread, if the section index is enabled.
+     * Any previous indexing is cancelled.
+     */
+    private void buildSectionIndex(final OverMenuAdapter adapter) {
+        if (null != mSectionIndex) {
+            mSectionIndex.cancel();
+            mSectionIndex = null;
+        }
+
+        if (null != mSectionStrip) {
+            mSectionStrip.setIndex(null);
+        }
+
+        if (!mSectionIndexEnabled || null == adapter) {
+            return;
+        }
+
+        final OverMenuSectionIndex index = new OverMenuSectionIndex(adapter);
+        final OverMenuSectionStrip strip = mSectionStrip;
+        mSectionIndex = index;
+        strip.setIndex(index);
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(
+            new Runnable() {
+                @Override
+                public void run() {
+                    index.run();
+                    if (index.isReady()) {
+                        strip.postInvalidate();
                     }
-                    setSelectedPosition(selectedPosition);
                 }
             });
     }
 
-    @SuppressWarnings ("unused")
-    public CharSequence[] getEntries() {
-        return mEntries;
+    /**
+     * Selects the first entry of the section starting with the given prefix, or of the following one
+     *
+     * @return false if the entries are not indexed or no section matches
+     */
+    boolean jumpToSection(final CharSequence prefix) {
+        if (null == mSectionIndex || !mSectionIndex.isFor(mAdapter) || mRowGeometry.getCount() == 0) {
+            return false;
+        }
+
+        final int position = mSectionIndex.getPositionForPrefix(prefix);
+        if (position < 0) {
+            return false;
+        }
+        setSelectedPosition(position);
+        return true;
     }
 
-    public void setNextPosition(final int position) {
-        if (OverMenuView.DEBUG) {
-            Log.i(TAG, "setNextPosition: " + position);
+    /**
+     * The finger is over the sections strip: selects the first entry of the section under it
+     *
+     * @return false if the finger is outside the strip
+     */
+    private boolean scrub(final MotionEvent event) {
+        final int section = null != mSectionStrip && null != mSectionIndex && mSectionIndex.isFor(mAdapter)
+            ? mSectionStrip.getSectionAt(event.getRawX(), event.getRawY()) : -1;
+        if (section != mScrubSection) {
+            mScrubSection = section;
+            if (section > -1) {
+                setSelectedPosition(mSectionIndex.getPositionForSection(section));
+            }
+        }
+        return section > -1;
+    }
+
+    /**
+     * True while the finger is over the sections strip
+     */
+    boolean isScrubbing() {
+        return mScrubSection > -1;
+    }
+
+    /**
+     * Shows the entry icon in the row, loading it if needed
+     */
+    private void bindIcon(@NonNull final TextView row, final int position) {
+        OverMenuIcons.bind(row, position > -1 ? mAdapter.getIconUri(position) : null, mIconSize);
+    }
+
+    /**
+     * Binds the icon of the selected text. Entries without icon keep an empty space, so moving the
+     * selection between entries with and without icon doesn't request a layout pass.
+     */
+    private void bindSelectedIcon(@NonNull final TextView selected, final int position) {
+        OverMenuIcons.bind(selected, position > -1 ? mAdapter.getIconUri(position) : null, mIconSize, true);
+    }
+
+    /**
+     * Reserves the space of the entry icon, if any, without loading it
+     */
+    private void setIconSlot(@NonNull final TextView row, final int position) {
+        if (null != mAdapter.getIconUri(position)) {
+            OverMenuIcons.setPlaceholder(row, mIconSize);
+        } else {
+            OverMenuIcons.bind(row, null, mIconSize);
+        }
+    }
+
+    /**
+     * The entry of the row changed: its icon is loaded only if the row is visible
+     */
+    private void refreshIcon(@NonNull final TextView row, final int position) {
+        if (mVirtualized || (position >= mIconFirst && position <= mIconLast)) {
+            bindIcon(row, position);
+        } else {
+            setIconSlot(row, position);
         }
+    }
+
+    /**
+     * Binds the icons of the rows entering the visible window and releases the ones of the
+     * rows leaving it. Virtual rows are bound when created.
+     */
+    private void updateVisibleIcons(final float translation) {
+        if (mVirtualized || mCanvasRenderer) {
+            return;
+        }
+
+        final int count = mRowGeometry.getCount();
+        int first = -1;
+        int last = -1;
+        if (count > 0) {
+            final float top = -(menuLayout.getTop() + translation);
+            first = mRowGeometry.indexAt(Math.max(top, mRowGeometry.getRowTop(0)));
+            last = mRowGeometry.indexAt(Math.min(top + getHeight(), mRowGeometry.getRowBottom(count - 1) - 1));
+            if (first < 0 || last < 0) {
+                first = last = -1;
+            }
+        }
+
+        if (first == mIconFirst && last == mIconLast) {
+            return;
+        }
+
+        for (int i = Math.max(mIconFirst, 0); i <= mIconLast; i++) {
+            final TextView row = getRowView(i);
+            if ((i < first || i > last) && null != row) {
+                OverMenuIcons.unbind(row, mIconSize);
+            }
+        }
+
+        for (int i = Math.max(first, 0); i <= last; i++) {
+            final TextView row = getRowView(i);
+            if ((i < mIconFirst || i > mIconLast) && null != row) {
+                bindIcon(row, i);
+            }
+        }
+
+        mIconFirst = first;
+        mIconLast = last;
+    }
+
+    /**
+     * Rows are about to move or change entry: the visible icons are released, and bound again on the next scroll
+     */
+    private void unbindVisibleIcons() {
+        for (int i = Math.max(mIconFirst, 0); i <= mIconLast; i++) {
+            final TextView row = getRowView(i);
+            if (null != row) {
+                OverMenuIcons.unbind(row, mIconSize);
+            }
+        }
+        mIconFirst = mIconLast = -1;
+    }
+
+    private TextView makeBoundRow(final int position) {
+        TextView textView = makeRow();
+        textView.setText(mAdapter.getItem(position));
+        setIconSlot(textView, position);
+        textView.setLayoutParams(new LayoutParams(MATCH_PARENT, WRAP_CONTENT));
+        return textView;
+    }
+
+    /**
+     * Reads the menu geometry after the next layout pass and restores the selection
+     */
+    private void requestGeometryUpdate() {
+        if (!mGeometryPending) {
+            mGeometryPending = true;
+            menuLayout.getViewTreeObserver().addOnGlobalLayoutListener(mGeometryListener);
+        }
+    }
+
+    private final ViewTreeObserver.OnGlobalLayoutListener mGeometryListener = new ViewTreeObserver.OnGlobalLayoutListener() {
+        @Override
+        public void onGlobalLayout() {
+            final long start = null != mMetrics ? System.nanoTime() : 0;
+            final boolean traced = OverMenuTrace.beginSection(OverMenuTrace.SECTION_GEOMETRY);
+            menuLayout.getViewTreeObserver().removeGlobalOnLayoutListener(this);
+            mGeometryPending = false;
+
+            mHeight = menuLayout.getHeight();
+            mTextHeight = null != selectedTextView
+                ? selectedTextView.getHeight() : ((OverMenuCanvasView) menuLayout).getSelectedRowHeight();
+
+            int padding = menuLayout.getPaddingBottom() + menuLayout.getPaddingTop();
+            mScrollModel.setRange(mHeight, padding, mItemsGap);
+            updateRowGeometry();
+
+            final int count = getCount();
+            setSelectedPosition(getStartPosition());
+
+            OverMenuTrace.record(OverMenuTrace.EVENT_LAYOUT, count);
+            OverMenuTrace.endSection(traced);
+
+            if (null != mMetrics) {
+                mMetrics.onLayoutPass(count, mLayoutPassNanos + System.nanoTime() - start);
+                mLayoutPassNanos = 0;
+            }
+        }
+    };
+
+    /**
+     * Geometry of the current entries, null if not measured yet
+     */
+    OverMenuGeometrySnapshot saveGeometry() {
+        if (null == mAdapter || mGeometryPending || mRowGeometry.getCount() == 0) {
+            return null;
+        }
+        return new OverMenuGeometrySnapshot(
+            getGeometryKey(), mHeight, paddingTop + paddingBottom, mItemsGap, mTextHeight, mRowGeometry);
+    }
+
+    /**
+     * Positions the menu using a saved geometry, before its layout pass, if it has been measured with the
+     * same entries, appearance and window width. The geometry is read again after the layout pass anyway.
+     *
+     * @return true if the snapshot has been applied
+     */
+    boolean restoreGeometry(final OverMenuGeometrySnapshot snapshot) {
+        if (null == snapshot || null == mAdapter || !mGeometryPending || snapshot.count != getCount()
+            || snapshot.key != getGeometryKey()) {
+            return false;
+        }
+
+        mHeight = snapshot.height;
+        mTextHeight = snapshot.textHeight;
+        mScrollModel.setRange(snapshot.height, snapshot.padding, snapshot.gap);
+        snapshot.restore(mRowGeometry);
+        setSelectedPosition(getStartPosition());
+        return true;
+    }
+
+    /**
+     * Hash of everything the geometry depends on
+     */
+    private int getGeometryKey() {
+        int hash = 17;
+        final int count = getCount();
+        for (int i = 0; i < count; i++) {
+            hash = 31 * hash + String.valueOf(mAdapter.getItem(i)).hashCode();
+            hash = 31 * hash + (null != mAdapter.getIconUri(i) ? 1 : 0);
+        }
+        hash = 31 * hash + mMenuTextAppearance;
+        hash = 31 * hash + mSelectedTextAppearance;
+        hash = 31 * hash + mItemsGap;
+        hash = 31 * hash + mMenuTextPadding;
+        hash = 31 * hash + mIconSize;
+        hash = 31 * hash + (mCanvasRenderer ? 2 : mVirtualized ? 1 : 0);
+        hash = 31 * hash + Float.floatToIntBits(getResources().getConfiguration().fontScale);
+        hash = 31 * hash + getResources().getDisplayMetrics().widthPixels;
+        return hash;
+    }
+
+    @Override
+    protected void onMeasure(final int widthMeasureSpec, final int heightMeasureSpec) {
+        final boolean traced = OverMenuTrace.beginSection(OverMenuTrace.SECTION_MEASURE);
+        if (null != mMetrics && mGeometryPending) {
+            final long start = System.nanoTime();
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            mLayoutPassNanos += System.nanoTime() - start;
+        } else {
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        }
+        if (null != selectedTextView) {
+            measureSelectedText();
+        }
+        OverMenuTrace.endSection(traced);
+    }
+
+    /**
+     * The selected text is as wide as the rows: measured in the same pass,
+     * resizing it once the geometry is known would need another layout pass
+     */
+    private void measureSelectedText() {
+        final int width = menuLayout.getMeasuredWidth() - (menuLayout.getPaddingLeft() + menuLayout.getPaddingRight());
+        if (selectedTextView.getMeasuredWidth() != width) {
+            selectedTextView.measure(
+                MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(selectedTextView.getMeasuredHeight(), MeasureSpec.EXACTLY));
+        }
+    }
+
+    @Override
+    protected void onLayout(final boolean changed, final int left, final int top, final int right, final int bottom) {
+        final boolean traced = OverMenuTrace.beginSection(OverMenuTrace.SECTION_LAYOUT);
+        mLayoutPasses++;
+        if (null != mMetrics && mGeometryPending) {
+            final long start = System.nanoTime();
+            super.onLayout(changed, left, top, right, bottom);
+            mLayoutPassNanos += System.nanoTime() - start;
+        } else {
+            super.onLayout(changed, left, top, right, bottom);
+        }
+        OverMenuTrace.endSection(traced);
+    }
+
+    /**
+     * Number of layout passes of the overlay since it has been created
+     */
+    int getLayoutPassCount() {
+        return mLayoutPasses;
+    }
+
+    private final OverMenuAdapter.Observer mAdapterObserver = new OverMenuAdapter.Observer() {
+        @Override
+        public void onChanged() {
+            precomputeText(mAdapter);
+            buildSectionIndex(mAdapter);
+            rebuild();
+        }
+
+        @Override
+        public void onItemRangeChanged(final int positionStart, final int itemCount) {
+            final boolean wider = updateTextLayouts(positionStart, itemCount);
+            updateSectionIndex(positionStart, itemCount);
+            if (null == menuLayout) {
+                return;
+            }
+
+            if (mCanvasRenderer) {
+                ((OverMenuCanvasView) menuLayout).onItemRangeChanged(positionStart, itemCount);
+                return;
+            }
+
+            // only rebind the changed rows
+            for (int i = positionStart; i < positionStart + itemCount; i++) {
+                TextView row = getRowView(i);
+                if (null != row) {
+                    row.setText(mAdapter.getItem(i));
+                    refreshIcon(row, i);
+                }
+            }
+
+            if (mCurrentPosition >= positionStart && mCurrentPosition < positionStart + itemCount && null != selectedTextView) {
+                selectedTextView.setCurrentText(mAdapter.getItem(mCurrentPosition));
+                bindSelectedIcon((TextView) selectedTextView.getCurrentView(), mCurrentPosition);
+            }
+
+            // rows sharing the same size only grow if a changed entry is wider than the others,
+            // rows measured one by one may also change their height
+            if (mVirtualized) {
+                if (wider) {
+                    OverMenuVirtualLayout virtualLayout = (OverMenuVirtualLayout) menuLayout;
+                    virtualLayout.setRepresentativePosition(mTextLayouts.getWidestPosition());
+                    virtualLayout.invalidateRowSize();
+                    requestGeometryUpdate();
+                }
+            } else if (!mFixedRowHeight || ((OverMenuRowsLayout) menuLayout).onRowsChanged(positionStart, itemCount)) {
+                requestGeometryUpdate();
+            }
+        }
+
+        @Override
+        public void onItemRangeInserted(final int positionStart, final int itemCount) {
+            precomputeText(mAdapter);
+            buildSectionIndex(mAdapter);
+            if (null == menuLayout) {
+                return;
+            }
+
+            if (mCanvasRenderer) {
+                // cheap, no views involved
+                rebuild();
+                return;
+            }
+
+            if (mVirtualized) {
+                ((OverMenuVirtualLayout) menuLayout).onCountChanged(mAdapter.getCount());
+            } else {
+                unbindVisibleIcons();
+                for (int i = positionStart; i < positionStart + itemCount; i++) {
+                    getRowsLayout().addView(makeBoundRow(i), i);
+                }
+                invalidateRowSize();
+            }
+
+            if (mCurrentPosition >= positionStart) {
+                mDefaultPosition = mCurrentPosition = mCurrentPosition + itemCount;
+            }
+            onSelectionMoved();
+            requestGeometryUpdate();
+        }
+
+        @Override
+        public void onItemRangeRemoved(final int positionStart, final int itemCount) {
+            precomputeText(mAdapter);
+            buildSectionIndex(mAdapter);
+            if (null == menuLayout) {
+                return;
+            }
+
+            if (mCanvasRenderer) {
+                rebuild();
+                return;
+            }
+
+            if (mVirtualized) {
+                ((OverMenuVirtualLayout) menuLayout).onCountChanged(mAdapter.getCount());
+            } else {
+                unbindVisibleIcons();
+                getRowsLayout().removeViews(positionStart, itemCount);
+                invalidateRowSize();
+            }
+
+            if (mCurrentPosition >= positionStart + itemCount) {
+                mDefaultPosition = mCurrentPosition = mCurrentPosition - itemCount;
+            } else if (mCurrentPosition >= positionStart) {
+                // the selected entry has been removed
+                mCurrentPosition = -1;
+                mDefaultPosition = positionStart;
+            }
+            onSelectionMoved();
+            requestGeometryUpdate();
+        }
+
+        private void onSelectionMoved() {
+            if (mVirtualized) {
+                ((OverMenuVirtualLayout) menuLayout).setHiddenPosition(mCurrentPosition);
+            }
+        }
+    };
+
+    /**
+     * Caches the rows offsets, used by {@link #onPostScroll(float)} to find the
+     * selected row
+     */
+    private void updateRowGeometry() {
+        if (mCanvasRenderer) {
+            OverMenuCanvasView canvasView = (OverMenuCanvasView) menuLayout;
+            mRowGeometry.setFixed(canvasView.getCount(), canvasView.getPaddingTop(), canvasView.getRowHeight());
+            return;
+        }
+
+        if (mVirtualized) {
+            OverMenuVirtualLayout virtualLayout = (OverMenuVirtualLayout) menuLayout;
+            mRowGeometry.setFixed(virtualLayout.getCount(), virtualLayout.getPaddingTop(), virtualLayout.getRowHeight());
+            return;
+        }
+
+        final ViewGroup rowsLayout = getRowsLayout();
+        final int count = rowsLayout.getChildCount();
+        if (count == 0) {
+            mRowGeometry.clear();
+            return;
+        }
+
+        if (mFixedRowHeight) {
+            mRowGeometry.setFixed(count, rowsLayout.getPaddingTop(), ((OverMenuRowsLayout) rowsLayout).getRowHeight());
+            return;
+        }
+
+        boolean fixed = true;
+        final int rowHeight = rowsLayout.getChildAt(0).getHeight();
+        for (int i = 1; i < count && fixed; i++) {
+            fixed = rowsLayout.getChildAt(i).getHeight() == rowHeight;
+        }
+
+        if (fixed) {
+            mRowGeometry.setFixed(count, rowsLayout.getChildAt(0).getTop(), rowHeight);
+        } else {
+            if (null == mRowTops || mRowTops.length < count) {
+                mRowTops = new int[count];
+            }
+            for (int i = 0; i < count; i++) {
+                mRowTops[i] = rowsLayout.getChildAt(i).getTop();
+            }
+            mRowGeometry.setOffsets(mRowTops, count, rowsLayout.getChildAt(count - 1).getBottom());
+        }
+    }
+
+    public void setNextPosition(final int position) {
         mDefaultPosition = position;
     }
 
@@ -330,148 +1336,542 @@ final class OverMenuLayout extends FrameLayout implements ViewSwitcher.ViewFacto
     }
 
     void updatePosition() {
-        if (OverMenuView.DEBUG) {
-            Log.i(TAG, "updatePosition");
-        }
-        setSelectedPosition(mCurrentPosition);
+        setSelectedPosition(getStartPosition());
+    }
+
+    /**
+     * The entry selected when the menu is shown: the next position if valid, otherwise the middle one.
+     * Since every selection updates the next position, this is also the last selected entry.
+     */
+    private int getStartPosition() {
+        final int count = getCount();
+        return mDefaultPosition < 0 || mDefaultPosition > count - 1 ? count / 2 : mDefaultPosition;
     }
 
     public void setSelectedPosition(int position) {
-        if (null != mEntries) {
-            if (OverMenuView.DEBUG) {
-                Log.i(TAG, "setSelectedPosition: " + position);
-            }
-            position = clamp(position, 0, mEntries.length - 1);
-            int topScroll = mMaxScroll;
-            int translationY = topScroll - (position * mTextHeight);
-            translationY = clamp(translationY, mMinScroll, mMaxScroll);
-            menuLayout.setTranslationY(translationY);
-            onPostScroll(menuLayout.getTranslationY());
+        if (null != mAdapter) {
+            final float current = mScrollModel.scrollToPosition(position);
+            menuLayout.setTranslationY(current);
+            onPostScroll(current);
         }
     }
 
+    /**
+     * Keeps scrolling the menu with the given velocity, decelerating, and finally settles
+     * on the closest entry
+     *
+     * @param velocityY finger velocity in pixels per second
+     * @param endAction executed once the menu settled, can be null
+     * @return true if the fling started
+     */
+    boolean fling(final float velocityY, final Runnable endAction) {
+        stopFling();
+        applyPendingScroll(false);
+
+        if (null == mAdapter || null == menuLayout || mRowGeometry.getCount() == 0) {
+            return false;
+        }
+
+        mFlingEndAction = endAction;
+        mFling.start(
+            mScrollModel.getTranslation(), -velocityY * SCROLL_GAIN, mScrollModel.getMinScroll(), mScrollModel.getMaxScroll(),
+            AnimationUtils.currentAnimationTimeMillis());
+        updateLayers();
+        ViewCompat.postOnAnimation(this, mFlingFrame);
+        return true;
+    }
+
+    void stopFling() {
+        if (mFling.isRunning()) {
+            mFling.stop();
+            removeCallbacks(mFlingFrame);
+        }
+        mFlingEndAction = null;
+    }
+
+    boolean isFlinging() {
+        return mFling.isRunning();
+    }
+
+    private final Runnable mFlingFrame = new Runnable() {
+        @Override
+        public void run() {
+            if (null == menuLayout || null == mAdapter) {
+                mFling.stop();
+                mFlingEndAction = null;
+                return;
+            }
+
+            final long start = null != mMetrics ? System.nanoTime() : 0;
+            final boolean running = mFling.step(AnimationUtils.currentAnimationTimeMillis());
+            final float current = mScrollModel.setTranslation(mFling.getPosition());
+            OverMenuTrace.record(OverMenuTrace.EVENT_SCROLL, (int) current);
+            menuLayout.setTranslationY(current);
+            onPostScroll(current);
+            if (null != mMetrics) {
+                mMetrics.onScrollFrame(System.nanoTime() - start);
+            }
+
+            if (running) {
+                ViewCompat.postOnAnimation(OverMenuLayout.this, this);
+            } else {
+                updateLayers();
+                final Runnable endAction = mFlingEndAction;
+                mFlingEndAction = null;
+                if (null != endAction) {
+                    endAction.run();
+                }
+            }
+        }
+    };
+
     @SuppressWarnings ("unused")
     public int getSelectedPosition() {
         return mCurrentPosition;
     }
 
     private void onPostScroll(final float current) {
-        if (null == mEntries) {
+        if (null == mAdapter || mRowGeometry.getCount() == 0) {
             return;
         }
 
-        for (int i = 0; i < menuLayout.getChildCount(); i++) {
-            View item = menuLayout.getChildAt(i);
-            tempRect.set(item.getLeft(), (int) (item.getTop() + current), item.getRight(), (int) (item.getBottom() + current));
-            if (tempRect.contains(mCenter.x, mCenter.y)) {
-                updateSelected(i, (TextView) item);
-                break;
-            }
+        final int position = mScrollModel.getPositionAt(current);
+        if (position > -1) {
+            updateSelected(position);
         }
+        updateVisibleIcons(current);
     }
 
     private int mCurrentPosition = -1;
-    private TextView mCurrentSelectedTextView;
 
-    private void updateSelected(final int position, final TextView textView) {
-        if (textView == mCurrentSelectedTextView) {
+    /**
+     * Returns the row view for the given position, if one is currently available
+     */
+    private TextView getRowView(final int position) {
+        if (position < 0 || mCanvasRenderer) {
+            return null;
+        }
+        if (mVirtualized) {
+            return ((OverMenuVirtualLayout) menuLayout).getRowAt(position);
+        }
+        return (TextView) getRowsLayout().getChildAt(position);
+    }
+
+    private void updateSelected(final int position) {
+        if (position == mCurrentPosition) {
             return;
         }
 
-        selectedTextView.setText(textView.getText());
+        if (mCanvasRenderer) {
+            ((OverMenuCanvasView) menuLayout).setSelectedPosition(position);
+        } else if (mCurrentPosition < 0) {
+            // the first entry shown: switching to the hidden text would need another layout pass
+            selectedTextView.setCurrentText(mAdapter.getItem(position));
+            bindSelectedIcon((TextView) selectedTextView.getCurrentView(), position);
+        } else {
+            selectedTextView.setText(mAdapter.getItem(position));
+            bindSelectedIcon((TextView) selectedTextView.getCurrentView(), position);
+        }
 
-        if (null != mCurrentSelectedTextView) {
+        final TextView previous = getRowView(mCurrentPosition);
+        if (null != previous) {
             if (mAnimateItems) {
-                showView(mCurrentSelectedTextView);
+                fadeRow(previous, true);
             } else {
-                mCurrentSelectedTextView.setVisibility(View.VISIBLE);
+                previous.setVisibility(View.VISIBLE);
             }
         }
 
-        if (mAnimateItems) {
-            hideView(textView);
-        } else {
-            textView.setVisibility(View.INVISIBLE);
+        final TextView textView = getRowView(position);
+        if (null != textView) {
+            if (mAnimateItems) {
+                fadeRow(textView, false);
+            } else {
+                textView.setVisibility(View.INVISIBLE);
+            }
+        }
+
+        if (mVirtualized) {
+            ((OverMenuVirtualLayout) menuLayout).setHiddenPosition(position);
         }
 
-        mCurrentSelectedTextView = textView;
         mDefaultPosition = mCurrentPosition = position;
 
-        if (null != listener) {
+        if (null != mSectionStrip) {
+            mSectionStrip.setSelectedPosition(position);
+        }
+
+        mGestureSelections++;
+        OverMenuTrace.record(OverMenuTrace.EVENT_SELECT, position);
+
+        if (null == listener) {
+            return;
+        }
+
+        if (mSelectionDispatch == OverMenuView.SELECTION_DISPATCH_PER_FRAME) {
+            mSelectionPending = true;
+            if (!mDispatchScheduled) {
+                mDispatchScheduled = true;
+                ViewCompat.postOnAnimation(this, mDispatchFrame);
+            }
+        } else {
             listener.onSelectionChanged(position);
         }
     }
 
+    /**
+     * Delivers the latest selection, at most once per frame
+     */
+    private final Runnable mDispatchFrame = new Runnable() {
+        @Override
+        public void run() {
+            mDispatchScheduled = false;
+            flushSelectionChanged();
+        }
+    };
+
+    /**
+     * Delivers the pending selection change now, if any
+     */
+    private void flushSelectionChanged() {
+        if (mDispatchScheduled) {
+            removeCallbacks(mDispatchFrame);
+            mDispatchScheduled = false;
+        }
+
+        if (mSelectionPending) {
+            mSelectionPending = false;
+            if (null != listener && mCurrentPosition > -1) {
+                listener.onSelectionChanged(mCurrentPosition);
+            }
+        }
+    }
+
+    /**
+     * The gesture ended and the menu is not moving anymore: the pending selection change
+     * is delivered, followed by the settled selection
+     */
+    void onSelectionSettled() {
+        applyPendingScroll(false);
+        flushSelectionChanged();
+        if (null != settledListener && mCurrentPosition > -1) {
+            settledListener.onSelectionSettled(mCurrentPosition);
+        }
+    }
+
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
+        stopFling();
+        removeCallbacks(mFadeFrame);
+        removeCallbacks(mMetricsFrame);
+        removeCallbacks(mDispatchFrame);
+        removeCallbacks(mTouchFrame);
+        mDispatchScheduled = false;
+        mSelectionPending = false;
+        mTouchFrameScheduled = false;
+        mPendingScroll = 0;
+        mFadeScheduled = false;
+        mRowFader.finish();
         mCurrentPosition = -1;
-        mCurrentSelectedTextView = null;
         menuLayout = null;
         selectedTextView = null;
     }
 
     void onScroll(final MotionEvent e1, final MotionEvent e2, final float distanceX, final float distanceY) {
-        if (null != mEntries) {
-            float current = menuLayout.getTranslationY();
-            current += distanceY * 1.2f;
-            current = clamp(current, mMinScroll, mMaxScroll);
-            menuLayout.setTranslationY(current);
-            onPostScroll(current);
+        if (null != mAdapter) {
+            if (!mScrolling) {
+                mScrolling = true;
+                updateLayers();
+            }
+            if (scrub(e2)) {
+                return;
+            }
+
+            if (mTouchMode == OverMenuView.TOUCH_MODE_PER_EVENT) {
+                scrollBy(distanceY, 0);
+                return;
+            }
+
+            // distanceY already covers the historical samples batched in e2
+            mPendingScroll += distanceY;
+            if (mTouchMode == OverMenuView.TOUCH_MODE_PREDICTED) {
+                trackVelocity(e2);
+            }
+            if (!mTouchFrameScheduled) {
+                mTouchFrameScheduled = true;
+                ViewCompat.postOnAnimation(this, mTouchFrame);
+            }
+        }
+    }
+
+    /**
+     * Scrolls the menu by the given finger distance
+     *
+     * @param prediction translation added to the shown menu only, the scroll position is not changed
+     */
+    private void scrollBy(final float distanceY, final float prediction) {
+        final long start = null != mMetrics ? System.nanoTime() : 0;
+        float current = mScrollModel.scrollBy(distanceY * SCROLL_GAIN);
+        if (prediction != 0) {
+            current = OverMenuScrollModel.clamp(current + prediction, mScrollModel.getMinScroll(), mScrollModel.getMaxScroll());
+        }
+        OverMenuTrace.record(OverMenuTrace.EVENT_SCROLL, (int) current);
+        menuLayout.setTranslationY(current);
+        onPostScroll(current);
+        if (null != mMetrics) {
+            mMetrics.onScrollFrame(System.nanoTime() - start);
         }
     }
 
-    static int clamp(int currentValue, int minValue, int maxValue) {
-        return Math.min(Math.max(currentValue, minValue), maxValue);
+    /**
+     * Finger velocity, in scroll distance per millisecond, from the latest samples of the event
+     * (the last historical one, or the previous event)
+     */
+    private void trackVelocity(@NonNull final MotionEvent event) {
+        final int history = event.getHistorySize();
+        final float y = event.getY();
+        final long time = event.getEventTime();
+        final float previousY = history > 0 ? event.getHistoricalY(history - 1) : mLastMoveY;
+        final long previousTime = history > 0 ? event.getHistoricalEventTime(history - 1) : mLastMoveTime;
+
+        if (previousTime >= 0 && time > previousTime) {
+            // smoothed, a single sample is noisy
+            mTouchVelocity = (mTouchVelocity + (previousY - y) / (time - previousTime)) / 2;
+        }
+        mLastMoveY = y;
+        mLastMoveTime = time;
     }
 
-    static float clamp(float currentValue, int minValue, int maxValue) {
-        return Math.min(Math.max(currentValue, minValue), maxValue);
+    /**
+     * Applies the finger movement accumulated during the frame, in a single translation and selection update
+     */
+    private final Runnable mTouchFrame = new Runnable() {
+        @Override
+        public void run() {
+            mTouchFrameScheduled = false;
+            applyPendingScroll(mTouchMode == OverMenuView.TOUCH_MODE_PREDICTED);
+        }
+    };
+
+    /**
+     * Applies the pending finger movement now. Without prediction the shown menu is also moved
+     * back to the actual scroll position.
+     */
+    private void applyPendingScroll(final boolean predict) {
+        if (mTouchFrameScheduled) {
+            removeCallbacks(mTouchFrame);
+            mTouchFrameScheduled = false;
+        }
+
+        if (mTouchMode == OverMenuView.TOUCH_MODE_PER_EVENT || null == mAdapter || null == menuLayout) {
+            mPendingScroll = 0;
+            return;
+        }
+
+        final float distance = mPendingScroll;
+        mPendingScroll = 0;
+        scrollBy(distance, predict ? mTouchVelocity * mFrameIntervalMs * SCROLL_GAIN : 0);
     }
 
-    static void hideView(@NonNull final View view) {
-        Animation animation = new AlphaAnimation(1, 0);
-        animation.setDuration(100);
-        hideView(view, animation);
+    private void resetTouch() {
+        if (mTouchFrameScheduled) {
+            removeCallbacks(mTouchFrame);
+            mTouchFrameScheduled = false;
+        }
+        mPendingScroll = 0;
+        mTouchVelocity = 0;
+        mLastMoveTime = -1;
     }
 
-    static void showView(@NonNull final View view) {
-        Animation animation = new AlphaAnimation(0, 1);
-        animation.setDuration(100);
-        showView(view, animation);
+    /**
+     * Fades the row in or out. Running transitions are retargeted in place.
+     */
+    private void fadeRow(@NonNull final View row, final boolean visible) {
+        if (visible && row.getVisibility() != View.VISIBLE) {
+            row.setAlpha(0);
+            row.setVisibility(View.VISIBLE);
+        }
+
+        mRowFader.fadeTo(row, visible ? 1 : 0, AnimationUtils.currentAnimationTimeMillis());
+
+        if (!mFadeScheduled) {
+            mFadeScheduled = true;
+            ViewCompat.postOnAnimation(this, mFadeFrame);
+        }
     }
 
-    static void hideView(@NonNull final View view, @NonNull final Animation animation) {
-        animation.setAnimationListener(
-            new Animation.AnimationListener() {
-                @Override
-                public void onAnimationStart(final Animation animation) {}
+    private final OverMenuFader<View> mRowFader = new OverMenuFader<View>(
+        new OverMenuFader.Applier<View>() {
+            @Override
+            public float getAlpha(final View target) {
+                return target.getAlpha();
+            }
 
-                @Override
-                public void onAnimationEnd(final Animation animation) {
-                    view.setVisibility(View.INVISIBLE);
+            @Override
+            public void setAlpha(final View target, final float alpha) {
+                target.setAlpha(alpha);
+            }
+
+            @Override
+            public void onFadeEnd(final View target, final float alpha) {
+                if (alpha == 0) {
+                    target.setVisibility(View.INVISIBLE);
                 }
+            }
+        });
 
-                @Override
-                public void onAnimationRepeat(final Animation animation) { }
-            });
-        view.startAnimation(animation);
+    private final Runnable mFadeFrame = new Runnable() {
+        @Override
+        public void run() {
+            if (mRowFader.step(AnimationUtils.currentAnimationTimeMillis())) {
+                ViewCompat.postOnAnimation(OverMenuLayout.this, this);
+            } else {
+                mFadeScheduled = false;
+            }
+        }
+    };
+
+    /**
+     * Shows the overlay, optionally using the given animation
+     */
+    void show(final Animation animation) {
+        OverMenuTrace.record(OverMenuTrace.EVENT_SHOW, mDefaultPosition);
+        mGestureSelections = 0;
+        resetTouch();
+        if (null != mMetrics) {
+            mGestureFrames = 0;
+            mGestureDroppedFrames = 0;
+            mLastFrameTime = 0;
+            removeCallbacks(mMetricsFrame);
+            ViewCompat.postOnAnimation(this, mMetricsFrame);
+        }
+
+        if (null != animation) {
+            mOverlayAnimating = true;
+            updateLayers();
+            animation.setAnimationListener(mInAnimationListener);
+            startAnimation(animation);
+        } else {
+            setVisibility(View.VISIBLE);
+        }
     }
 
-    static void showView(@NonNull final View view, @NonNull final Animation animation) {
-        animation.setAnimationListener(
-            new Animation.AnimationListener() {
-                @Override
-                public void onAnimationStart(final Animation animation) {
-                    view.setVisibility(View.VISIBLE);
+    /**
+     * Hides the overlay, optionally using the given animation. Once hidden, the
+     * hardware layers are released (unless the layer policy is {@link OverMenuView#LAYER_POLICY_ALWAYS})
+     */
+    void hide(final Animation animation) {
+        OverMenuTrace.record(OverMenuTrace.EVENT_HIDE, mCurrentPosition);
+        mScrolling = false;
+        mScrubSection = -1;
+        resetTouch();
+        if (null != mMetrics) {
+            removeCallbacks(mMetricsFrame);
+            mMetrics.onGestureFinished(mGestureFrames, mGestureDroppedFrames, mGestureSelections);
+        }
+        if (null != animation) {
+            mOverlayAnimating = true;
+            updateLayers();
+            animation.setAnimationListener(mOutAnimationListener);
+            startAnimation(animation);
+        } else {
+            setVisibility(View.INVISIBLE);
+            updateLayers();
+        }
+    }
+
+    /**
+     * Counts the frames, and the skipped ones, while the menu is visible
+     */
+    private final Runnable mMetricsFrame = new Runnable() {
+        @Override
+        public void run() {
+            if (null == mMetrics) {
+                return;
+            }
+
+            final long frameTime = AnimationUtils.currentAnimationTimeMillis();
+            if (mLastFrameTime > 0) {
+                mGestureFrames++;
+                final int skipped = Math.round((frameTime - mLastFrameTime) / mFrameIntervalMs) - 1;
+                if (skipped > 0) {
+                    mGestureDroppedFrames += skipped;
                 }
+            }
+            mLastFrameTime = frameTime;
+            ViewCompat.postOnAnimation(OverMenuLayout.this, this);
+        }
+    };
 
-                @Override
-                public void onAnimationEnd(final Animation animation) { }
+    private final Animation.AnimationListener mInAnimationListener = new Animation.AnimationListener() {
+        @Override
+        public void onAnimationStart(final Animation animation) {
+            setVisibility(View.VISIBLE);
+        }
 
-                @Override
-                public void onAnimationRepeat(final Animation animation) { }
-            });
-        view.startAnimation(animation);
+        @Override
+        public void onAnimationEnd(final Animation animation) {
+            mOverlayAnimating = false;
+            updateLayers();
+        }
+
+        @Override
+        public void onAnimationRepeat(final Animation animation) { }
+    };
+
+    private final Animation.AnimationListener mOutAnimationListener = new Animation.AnimationListener() {
+        @Override
+        public void onAnimationStart(final Animation animation) { }
+
+        @Override
+        public void onAnimationEnd(final Animation animation) {
+            setVisibility(View.INVISIBLE);
+            mOverlayAnimating = false;
+            updateLayers();
+        }
+
+        @Override
+        public void onAnimationRepeat(final Animation animation) { }
+    };
+
+    public void setLayerPolicy(final int policy) {
+        mLayerPolicy = policy;
+        updateLayers();
+    }
+
+    public int getLayerPolicy() {
+        return mLayerPolicy;
+    }
+
+    /**
+     * Enables or disables the hardware layers of the menu and of the selected text,
+     * according to the current layer policy
+     */
+    private void updateLayers() {
+        final boolean enabled;
+        if (mLayerPolicy == OverMenuView.LAYER_POLICY_ALWAYS) {
+            enabled = true;
+        } else if (mLayerPolicy == OverMenuView.LAYER_POLICY_NEVER) {
+            enabled = false;
+        } else {
+            enabled = mOverlayAnimating || mScrolling || mFling.isRunning();
+        }
+
+        if (enabled != mLayersEnabled) {
+            mLayersEnabled = enabled;
+            applyLayerType();
+        }
+    }
+
+    private void applyLayerType() {
+        final int layerType = mLayersEnabled ? LAYER_TYPE_HARDWARE : LAYER_TYPE_NONE;
+        // the virtualized and canvas menus are as tall as all their entries, too big for a layer
+        if (null != menuLayout && !mVirtualized && !mCanvasRenderer) {
+            menuLayout.setLayerType(layerType, null);
+        }
+        if (null != selectedTextView) {
+            selectedTextView.setLayerType(layerType, null);
+        }
     }
 }
@@ -0,0 +1,77 @@
+package it.sephiroth.android.library.overlaymenu;
+
+import android.support.annotation.NonNull;
+import android.support.v4.util.LruCache;
+import android.text.Layout;
+import android.text.TextPaint;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Text widths of the menu entries, by appearance and then by text, shared by all the menus,
+ * so entries shown again (by the same or a recreated menu) are not measured again.
+ * The widths of an appearance are kept for at least twice the entries of the largest menu using it,
+ * so the rows of a menu, looked up in order, never evict each other.
+ * Must be used from the UI thread.
+ */
+final class OverMenuMeasureCache {
+    static final String TAG = "OverMenuMeasureCache";
+    static final int MIN_ENTRIES = 1024;
+
+    private static final HashMap<String, LruCache<String, Float>> sWidths = new HashMap<String, LruCache<String, Float>>();
+
+    private OverMenuMeasureCache() { }
+
+    /**
+     * Key of the text appearance
+     *
+     * @param appearance the text appearance resource
+     */
+    static String getAppearanceKey(final int appearance, @NonNull final TextPaint paint) {
+        return appearance + "/" + paint.getTextSize() + "/" + paint.getTextScaleX() + "/" + paint.getFlags() + "/"
+            + (null != paint.getTypeface() ? paint.getTypeface().getStyle() : 0);
+    }
+
+    /**
+     * The widths measured with the given appearance, able to hold at least the given number of entries
+     */
+    static LruCache<String, Float> getWidths(@NonNull final String appearanceKey, final int count) {
+        LruCache<String, Float> widths = sWidths.get(appearanceKey);
+        if (null == widths || widths.maxSize() < count) {
+            final LruCache<String, Float> resized = new LruCache<String, Float>(Math.max(MIN_ENTRIES, count * 2));
+            if (null != widths) {
+                for (Map.Entry<String, Float> entry : widths.snapshot().entrySet()) {
+                    resized.put(entry.getKey(), entry.getValue());
+                }
+            }
+            widths = resized;
+            sWidths.put(appearanceKey, widths);
+        }
+        return widths;
+    }
+
+    /**
+     * Width of the text, measured only if not in the cache
+     *
+     * @param widths the widths of the text appearance, see {@link #getWidths(String, int)}
+     */
+    static float getWidth(@NonNull final LruCache<String, Float> widths, final CharSequence text, @NonNull final TextPaint paint) {
+        if (null == text || text.length() == 0) {
+            return 0;
+        }
+
+        // no copy for plain strings
+        final String key = text.toString();
+        Float width = widths.get(key);
+        if (null == width) {
+            width = Layout.getDesiredWidth(text, paint);
+            widths.put(key, width);
+        }
+        return width;
+    }
+
+    static void clear() {
+        sWidths.clear();
+    }
+}
@@ -0,0 +1,51 @@
+package it.sephiroth.android.library.overlaymenu;
+
+/**
+ * Receives performance measurements of the menu, see
+ * {@link OverMenuView#setMetricsListener(OverMenuMetricsListener)}.
+ * All the callbacks are invoked on the UI thread, so they should only record the values.
+ * When no listener is set nothing is measured.
+ */
+public interface OverMenuMetricsListener {
+    /**
+     * Time between the touch that opened the menu and the first frame of the overlay
+     *
+     * @param latencyMs latency in milliseconds
+     */
+    void onShowLatency(long latencyMs);
+
+    /**
+     * The overlay has been updated with new entries
+     *
+     * @param count         number of entries
+     * @param durationNanos time spent updating the rows
+     */
+    void onEntriesChanged(int count, long durationNanos);
+
+    /**
+     * The overlay has been measured and laid out after the entries changed
+     *
+     * @param count         number of entries
+     * @param durationNanos time spent in measure, layout and reading the menu geometry
+     */
+    void onLayoutPass(int count, long durationNanos);
+
+    /**
+     * A scroll or fling step has been processed. Fling steps and touch input in
+     * {@link OverMenuView#TOUCH_MODE_PER_FRAME} and {@link OverMenuView#TOUCH_MODE_PREDICTED}
+     * are processed once per frame. In {@link OverMenuView#TOUCH_MODE_PER_EVENT}, the default,
+     * every touch event is processed as it arrives, so a frame may report more than one step.
+     *
+     * @param durationNanos time spent moving the menu and updating the selection
+     */
+    void onScrollFrame(long durationNanos);
+
+    /**
+     * The menu has been hidden
+     *
+     * @param frames           frames rendered while the menu was visible
+     * @param droppedFrames    frames skipped, based on the display refresh rate
+     * @param selectionChanges times the selected entry changed
+     */
+    void onGestureFinished(int frames, int droppedFrames, int selectionChanges);
+}
@@ -0,0 +1,100 @@
+package it.sephiroth.android.library.overlaymenu;
+
+/**
+ * Vertical geometry of the menu rows, used to find the row at a given y
+ * coordinate without walking the views.
+ * When all the rows have the same height the lookup is a simple division, otherwise
+ * a binary search is performed over the cached table of the row offsets.
+ */
+final class OverMenuRowGeometry {
+    private int mCount;
+    private int mOrigin;
+    private int mRowHeight;
+    private int[] mOffsets = new int[0];
+    private boolean mFixed = true;
+
+    /**
+     * All the rows have the same height
+     *
+     * @param count     number of rows
+     * @param origin    top of the first row
+     * @param rowHeight height of every row
+     */
+    void setFixed(final int count, final int origin, final int rowHeight) {
+        mCount = rowHeight > 0 ? Math.max(0, count) : 0;
+        mOrigin = origin;
+        mRowHeight = rowHeight;
+        mFixed = true;
+    }
+
+    /**
+     * Rows with different heights
+     *
+     * @param tops   top of each row
+     * @param count  number of rows
+     * @param bottom bottom of the last row
+     */
+    void setOffsets(final int[] tops, final int count, final int bottom) {
+        if (mOffsets.length < count + 1) {
+            mOffsets = new int[count + 1];
+        }
+        System.arraycopy(tops, 0, mOffsets, 0, count);
+        mOffsets[count] = bottom;
+        mCount = count;
+        mOrigin = count > 0 ? tops[0] : 0;
+        mRowHeight = 0;
+        mFixed = false;
+    }
+
+    void clear() {
+        mCount = 0;
+        mFixed = true;
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    boolean isFixed() {
+        return mFixed;
+    }
+
+    int getRowTop(final int index) {
+        return mFixed ? mOrigin + index * mRowHeight : mOffsets[index];
+    }
+
+    int getRowBottom(final int index) {
+        return mFixed ? mOrigin + (index + 1) * mRowHeight : mOffsets[index + 1];
+    }
+
+    /**
+     * @return the index of the row containing the y coordinate, -1 if none
+     */
+    int indexAt(final float y) {
+        if (mCount == 0 || y < mOrigin) {
+            return -1;
+        }
+
+        if (mFixed) {
+            final int index = (int) ((y - mOrigin) / mRowHeight);
+            return index < mCount ? index : -1;
+        }
+
+        if (y >= mOffsets[mCount]) {
+            return -1;
+        }
+
+        // last row whose top is <= y
+        int low = 0;
+        int high = mCount - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (mOffsets[mid] <= y) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,134 @@
+package it.sephiroth.android.library.overlaymenu;
+
+import android.content.Context;
+import android.support.v4.util.LruCache;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+/**
+ * Vertical menu container for rows sharing the same height. Only the first row is measured
+ * to get the row height, the row width comes from the text widths of the entries (cached by
+ * {@link OverMenuMeasureCache}) and every row is positioned arithmetically.
+ * Once the row size is known rows are measured again only if they requested it, so showing
+ * the same entries again doesn't measure any row.
+ */
+final class OverMenuRowsLayout extends ViewGroup {
+    static final String TAG = "OverMenuRowsLayout";
+
+    private final int mAppearance;
+    private String mAppearanceKey;
+    private int mRowWidth = -1;
+    private int mRowHeight = -1;
+
+    /**
+     * @param appearance text appearance of the rows, used as part of the measure cache key
+     */
+    public OverMenuRowsLayout(final Context context, final int appearance) {
+        super(context);
+        mAppearance = appearance;
+    }
+
+    /**
+     * Entries changed: the row size is computed again on the next measure pass
+     */
+    void invalidateRowSize() {
+        mRowWidth = -1;
+        mRowHeight = -1;
+        requestLayout();
+    }
+
+    /**
+     * Rows changed their text: the row size is computed again only if one of them became wider
+     *
+     * @return true if the row size has been invalidated
+     */
+    boolean onRowsChanged(final int positionStart, final int itemCount) {
+        if (mRowWidth < 0) {
+            return false;
+        }
+
+        final int count = getChildCount();
+        final int end = Math.min(positionStart + itemCount, count);
+        final LruCache<String, Float> widths = OverMenuMeasureCache.getWidths(mAppearanceKey, count);
+        for (int i = positionStart; i < end; i++) {
+            final TextView row = (TextView) getChildAt(i);
+            final float width = OverMenuMeasureCache.getWidth(widths, row.getText(), row.getPaint());
+            if ((int) Math.ceil(width) + row.getCompoundPaddingLeft() + row.getCompoundPaddingRight() > mRowWidth) {
+                invalidateRowSize();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int getRowHeight() {
+        return Math.max(mRowHeight, 0);
+    }
+
+    @Override
+    protected void onMeasure(final int widthMeasureSpec, final int heightMeasureSpec) {
+        final int count = getChildCount();
+        final int paddingHorizontal = getPaddingLeft() + getPaddingRight();
+        final int paddingVertical = getPaddingTop() + getPaddingBottom();
+
+        if (count == 0) {
+            setMeasuredDimension(resolveSize(paddingHorizontal, widthMeasureSpec), paddingVertical);
+            return;
+        }
+
+        if (mRowWidth < 0 || mRowHeight < 0) {
+            computeRowSize();
+        }
+
+        final int width = resolveSize(mRowWidth + paddingHorizontal, widthMeasureSpec);
+        final int rowWidth = width - paddingHorizontal;
+        final int childWidthSpec = MeasureSpec.makeMeasureSpec(rowWidth, MeasureSpec.EXACTLY);
+        final int childHeightSpec = MeasureSpec.makeMeasureSpec(mRowHeight, MeasureSpec.EXACTLY);
+        for (int i = 0; i < count; i++) {
+            final View child = getChildAt(i);
+            if (child.isLayoutRequested() || child.getMeasuredWidth() != rowWidth || child.getMeasuredHeight() != mRowHeight) {
+                child.measure(childWidthSpec, childHeightSpec);
+            }
+        }
+
+        // height is intentionally not constrained by the parent: the content is scrolled using the translation
+        setMeasuredDimension(width, paddingVertical + count * mRowHeight);
+    }
+
+    /**
+     * Measures the first row for the height, the width is the one of the widest entry
+     */
+    private void computeRowSize() {
+        final TextView first = (TextView) getChildAt(0);
+        first.measure(MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED), MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED));
+        mRowHeight = first.getMeasuredHeight();
+
+        if (null == mAppearanceKey) {
+            mAppearanceKey = OverMenuMeasureCache.getAppearanceKey(mAppearance, first.getPaint());
+        }
+
+        float textWidth = 0;
+        final int count = getChildCount();
+        final LruCache<String, Float> widths = OverMenuMeasureCache.getWidths(mAppearanceKey, count);
+        for (int i = 0; i < count; i++) {
+            final TextView row = (TextView) getChildAt(i);
+            textWidth = Math.max(textWidth, OverMenuMeasureCache.getWidth(widths, row.getText(), row.getPaint()));
+        }
+
+        // paddings and icon
+        mRowWidth = (int) Math.ceil(textWidth) + first.getCompoundPaddingLeft() + first.getCompoundPaddingRight();
+    }
+
+    @Override
+    protected void onLayout(final boolean changed, final int l, final int t, final int r, final int b) {
+        final int left = getPaddingLeft();
+        final int right = getWidth() - getPaddingRight();
+        int top = getPaddingTop();
+        final int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            getChildAt(i).layout(left, top, right, top + mRowHeight);
+            top += mRowHeight;
+        }
+    }
+}
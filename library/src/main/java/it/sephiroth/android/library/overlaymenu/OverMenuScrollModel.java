@@ -0,0 +1,149 @@
+package it.sephiroth.android.library.overlaymenu;
+
+/**
+ * Scroll state of the menu, independent of the views: the scroll range, the current
+ * translation, the mapping between entries and translations and the hit test at the
+ * center of the overlay. OverMenuLayout applies the translation to the menu view and
+ * dispatches the selection; everything else is computed here, without allocations.
+ */
+final class OverMenuScrollModel implements OverMenuFling.SnapTarget {
+    private final OverMenuRowGeometry mRowGeometry = new OverMenuRowGeometry();
+    /** scroll range used until the rows geometry is known, the one of the original menu */
+    private int mMaxScroll;
+    private int mMinScroll;
+    private int mCenterY;
+    private float mTranslation;
+
+    /**
+     * Updates the scroll range after the menu has been laid out
+     *
+     * @param height  height of the menu
+     * @param padding vertical padding of the menu
+     * @param gap     gap between the items
+     */
+    void setRange(final int height, final int padding, final int gap) {
+        mMaxScroll = (height / 2) - (padding + gap * 2);
+        mMinScroll = -mMaxScroll;
+        mCenterY = height / 2;
+        mTranslation = clamp(mTranslation, getMinScroll(), getMaxScroll());
+    }
+
+    /**
+     * Geometry of the rows, in menu coordinates
+     */
+    OverMenuRowGeometry getRowGeometry() {
+        return mRowGeometry;
+    }
+
+    int getCount() {
+        return mRowGeometry.getCount();
+    }
+
+    /**
+     * Translation which centers the first row.
+     * Once the rows geometry is known the scroll range is the one centering the first and the
+     * last row, no longer (height / 2) - (padding + gap * 2) and its opposite: that range
+     * didn't depend on the rows, and didn't stop on the first and last row unless half a row
+     * was exactly twice the gap.
+     */
+    int getMaxScroll() {
+        return mRowGeometry.getCount() > 0 ? mCenterY - getRowCenter(0) : mMaxScroll;
+    }
+
+    /**
+     * Translation which centers the last row
+     */
+    int getMinScroll() {
+        final int count = mRowGeometry.getCount();
+        return count > 0 ? Math.min(mCenterY - getRowCenter(count - 1), getMaxScroll()) : mMinScroll;
+    }
+
+    private int getRowCenter(final int position) {
+        return (mRowGeometry.getRowTop(position) + mRowGeometry.getRowBottom(position)) / 2;
+    }
+
+    int getCenterY() {
+        return mCenterY;
+    }
+
+    float getTranslation() {
+        return mTranslation;
+    }
+
+    /**
+     * @return the new translation, clamped to the scroll range
+     */
+    float setTranslation(final float translation) {
+        mTranslation = clamp(translation, getMinScroll(), getMaxScroll());
+        return mTranslation;
+    }
+
+    /**
+     * @return the new translation, clamped to the scroll range
+     */
+    float scrollBy(final float distance) {
+        return setTranslation(mTranslation + distance);
+    }
+
+    /**
+     * Scrolls to the given entry
+     *
+     * @return the new translation
+     */
+    float scrollToPosition(final int position) {
+        mTranslation = getTranslationForPosition(position);
+        return mTranslation;
+    }
+
+    /**
+     * The translation which brings the center of the entry onto the center of the overlay
+     */
+    int getTranslationForPosition(int position) {
+        final int count = mRowGeometry.getCount();
+        if (count == 0) {
+            return mMaxScroll;
+        }
+        position = clamp(position, 0, count - 1);
+        return clamp(mCenterY - getRowCenter(position), getMinScroll(), getMaxScroll());
+    }
+
+    /**
+     * @return the entry at the center of the overlay for the given translation, -1 if none
+     */
+    int getPositionAt(final float translation) {
+        return mRowGeometry.indexAt(mCenterY - translation);
+    }
+
+    /**
+     * @return the entry at the center of the overlay, -1 if none
+     */
+    int getPosition() {
+        return getPositionAt(mTranslation);
+    }
+
+    /**
+     * The translation of the entry closest to the center, for the given translation
+     */
+    @Override
+    public float getSnapTranslation(final float translation) {
+        final int count = mRowGeometry.getCount();
+        if (count == 0) {
+            return translation;
+        }
+
+        final float y = mCenterY - translation;
+        int position = mRowGeometry.indexAt(y);
+        if (position < 0) {
+            position = y < mRowGeometry.getRowTop(0) ? 0 : count - 1;
+        }
+        return getTranslationForPosition(position);
+    }
+
+    static int clamp(int currentValue, int minValue, int maxValue) {
+        return Math.min(Math.max(currentValue, minValue), maxValue);
+    }
+
+    static float clamp(float currentValue, int minValue, int maxValue) {
+        return Math.min(Math.max(currentValue, minValue), maxValue);
+    }
+}
@@ -0,0 +1,153 @@
+package it.sephiroth.android.library.overlaymenu;
+
+/**
+ * Prefix index of sorted menu entries: every section is a first letter (digits and symbols are
+ * grouped under {@link #OTHER_SECTION}) with the position of its first entry.
+ * The entries are copied when the index is created, then the index is built incrementally
+ * by {@link #run()}, usually on a background thread: sections found so far are already
+ * visible to the other threads while the rest of the entries is still being scanned.
+ */
+final class OverMenuSectionIndex implements Runnable {
+    static final String TAG = "OverMenuSectionIndex";
+
+    static final String OTHER_SECTION = "#";
+
+    private final OverMenuAdapter mAdapter;
+    private final CharSequence[] mTexts;
+    // one slot per entry, the worst case: arrays never grow while the index is read
+    private final String[] mSections;
+    private final int[] mPositions;
+    private volatile int mSectionCount;
+    private volatile boolean mCancelled;
+    private volatile boolean mReady;
+
+    /**
+     * Must be called from the thread owning the adapter: the adapter items are copied here
+     */
+    OverMenuSectionIndex(final OverMenuAdapter adapter) {
+        final int count = null != adapter ? adapter.getCount() : 0;
+        mAdapter = adapter;
+        mTexts = new CharSequence[count];
+        for (int i = 0; i < count; i++) {
+            mTexts[i] = adapter.getItem(i);
+        }
+        mSections = new String[count];
+        mPositions = new int[count];
+    }
+
+    void cancel() {
+        mCancelled = true;
+    }
+
+    @Override
+    public void run() {
+        int sections = 0;
+        String last = null;
+        for (int i = 0; i < mTexts.length && !mCancelled; i++) {
+            final String section = getSection(mTexts[i]);
+            if (!section.equals(last)) {
+                mSections[sections] = section;
+                mPositions[sections] = i;
+                // publishes the new section
+                mSectionCount = ++sections;
+                last = section;
+            }
+        }
+
+        if (!mCancelled) {
+            mReady = true;
+        }
+    }
+
+    /**
+     * Entries changed in place: the index is still valid if the changed entries kept their sections.
+     * Must be called from the thread owning the adapter, only once ready.
+     *
+     * @return false if the index must be built again
+     */
+    boolean update(final int positionStart, final int itemCount) {
+        final int end = Math.min(positionStart + itemCount, mTexts.length);
+        for (int i = positionStart; i < end; i++) {
+            if (!getSection(mTexts[i]).equals(getSection(mAdapter.getItem(i)))) {
+                return false;
+            }
+        }
+        for (int i = positionStart; i < end; i++) {
+            mTexts[i] = mAdapter.getItem(i);
+        }
+        return true;
+    }
+
+    static String getSection(final CharSequence text) {
+        if (null == text || text.length() == 0) {
+            return OTHER_SECTION;
+        }
+        final char c = text.charAt(0);
+        return Character.isLetter(c) ? String.valueOf(Character.toUpperCase(c)) : OTHER_SECTION;
+    }
+
+    boolean isReady() {
+        return mReady;
+    }
+
+    boolean isFor(final OverMenuAdapter adapter) {
+        return mAdapter == adapter && mTexts.length == (null != adapter ? adapter.getCount() : 0);
+    }
+
+    /**
+     * Number of sections found so far
+     */
+    int getSectionCount() {
+        return mSectionCount;
+    }
+
+    String getSection(final int section) {
+        return mSections[section];
+    }
+
+    int getPositionForSection(final int section) {
+        return mPositions[section];
+    }
+
+    /**
+     * Section containing the given entry, -1 if it has not been indexed yet
+     */
+    int getSectionForPosition(final int position) {
+        int low = 0;
+        int high = mSectionCount - 1;
+        int result = -1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (mPositions[mid] <= position) {
+                result = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Position of the first entry of the section starting with the given prefix, or of the
+     * following section if there's no such section
+     *
+     * @return -1 if all the indexed sections come before the prefix
+     */
+    int getPositionForPrefix(final CharSequence prefix) {
+        final String key = getSection(prefix);
+        int low = 0;
+        int high = mSectionCount - 1;
+        int result = -1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (mSections[mid].compareTo(key) >= 0) {
+                result = mid;
+                high = mid - 1;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return result > -1 ? mPositions[result] : -1;
+    }
+}
@@ -0,0 +1,101 @@
+package it.sephiroth.android.library.overlaymenu;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.support.annotation.NonNull;
+import android.text.TextPaint;
+import android.view.View;
+
+/**
+ * Vertical strip with the sections of the menu entries. While the finger is over the strip
+ * the menu jumps to the section under it.
+ */
+final class OverMenuSectionStrip extends View {
+    static final String TAG = "OverMenuSectionStrip";
+
+    private final TextPaint mPaint;
+    private final TextPaint mSelectedPaint;
+    private final float mTextSize;
+    private final float mSelectedTextSize;
+    private final int[] mLocation = new int[2];
+    private OverMenuSectionIndex mIndex;
+    private int mSelectedSection = -1;
+
+    /**
+     * @param paint         paint of the sections
+     * @param selectedPaint paint of the section of the selected entry
+     */
+    OverMenuSectionStrip(final Context context, @NonNull final TextPaint paint, @NonNull final TextPaint selectedPaint) {
+        super(context);
+        mPaint = new TextPaint(paint);
+        mPaint.setTextAlign(Paint.Align.CENTER);
+        mSelectedPaint = new TextPaint(selectedPaint);
+        mSelectedPaint.setTextAlign(Paint.Align.CENTER);
+        mTextSize = mPaint.getTextSize();
+        mSelectedTextSize = mSelectedPaint.getTextSize();
+    }
+
+    void setIndex(final OverMenuSectionIndex index) {
+        mIndex = index;
+        mSelectedSection = -1;
+        invalidate();
+    }
+
+    /**
+     * Highlights the section of the selected entry
+     */
+    void setSelectedPosition(final int position) {
+        final int section = null != mIndex ? mIndex.getSectionForPosition(position) : -1;
+        if (section != mSelectedSection) {
+            mSelectedSection = section;
+            invalidate();
+        }
+    }
+
+    /**
+     * Section under the given screen coordinates
+     *
+     * @return -1 if the coordinates are outside the strip
+     */
+    int getSectionAt(final float rawX, final float rawY) {
+        final int count = null != mIndex ? mIndex.getSectionCount() : 0;
+        if (count == 0 || getVisibility() != View.VISIBLE || getHeight() == 0) {
+            return -1;
+        }
+
+        getLocationOnScreen(mLocation);
+        final float x = rawX - mLocation[0];
+        final float y = rawY - mLocation[1] - getPaddingTop();
+        final int height = getHeight() - getPaddingTop() - getPaddingBottom();
+        if (x < 0 || x >= getWidth() || y < 0 || y >= height) {
+            return -1;
+        }
+        return Math.min((int) (y * count / height), count - 1);
+    }
+
+    @Override
+    protected void onMeasure(final int widthMeasureSpec, final int heightMeasureSpec) {
+        final int width = (int) Math.ceil(mSelectedPaint.measureText("W") * 2) + getPaddingLeft() + getPaddingRight();
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), getDefaultSize(getSuggestedMinimumHeight(), heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(final Canvas canvas) {
+        final int count = null != mIndex ? mIndex.getSectionCount() : 0;
+        if (count == 0) {
+            return;
+        }
+
+        final float slot = (float) (getHeight() - getPaddingTop() - getPaddingBottom()) / count;
+        final float x = getPaddingLeft() + (getWidth() - getPaddingLeft() - getPaddingRight()) / 2f;
+        // many sections: the labels shrink to fit their slot
+        mPaint.setTextSize(Math.min(mTextSize, slot * 0.8f));
+        mSelectedPaint.setTextSize(Math.min(mSelectedTextSize, slot * 0.8f));
+        for (int i = 0; i < count; i++) {
+            final TextPaint paint = i == mSelectedSection ? mSelectedPaint : mPaint;
+            final float y = getPaddingTop() + slot * i + (slot - paint.ascent() - paint.descent()) / 2;
+            canvas.drawText(mIndex.getSection(i), x, y, paint);
+        }
+    }
+}
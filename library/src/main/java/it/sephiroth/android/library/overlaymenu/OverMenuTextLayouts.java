@@ -0,0 +1,226 @@
+package it.sephiroth.android.library.overlaymenu;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.widget.TextView;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Text layouts of the menu entries, computed ahead of time on a background thread.
+ * Entries are measured and shaped with both the menu and the selected text appearance,
+ * so the text layout cache is already populated when the rows are bound and measured
+ * on the UI thread. The layouts themselves are only kept for the renderer drawing them,
+ * otherwise only the widths are.
+ */
+final class OverMenuTextLayouts implements Runnable {
+    static final String TAG = "OverMenuTextLayouts";
+
+    interface Callback {
+        void onTextLayoutsReady(@NonNull OverMenuTextLayouts layouts);
+    }
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private final OverMenuAdapter mAdapter;
+    private final CharSequence[] mTexts;
+    private final TextPaint mPaint;
+    private final TextPaint mSelectedPaint;
+    private final int mHorizontalPadding;
+    private final Layout[] mLayouts;
+    private final Layout[] mSelectedLayouts;
+    private final float[] mWidths;
+    private int mWidestPosition = -1;
+    private float mMaxWidth;
+    private Callback mCallback;
+    private volatile boolean mCancelled;
+    private volatile boolean mReady;
+
+    /**
+     * Must be called from the UI thread: the adapter items are copied here, while the
+     * text appearance is taken from the two prototype rows
+     *
+     * @param adapter           the menu entries
+     * @param row               a row using the menu text appearance
+     * @param selectedRow       a row using the selected text appearance
+     * @param horizontalPadding padding added to the left and right of every entry
+     * @param keepLayouts       true to keep the layouts of the entries, false to only measure them
+     */
+    OverMenuTextLayouts(
+        @NonNull final OverMenuAdapter adapter, @NonNull final TextView row, @NonNull final TextView selectedRow,
+        final int horizontalPadding, final boolean keepLayouts) {
+        final int count = adapter.getCount();
+        mAdapter = adapter;
+        mTexts = new CharSequence[count];
+        for (int i = 0; i < count; i++) {
+            mTexts[i] = adapter.getItem(i);
+        }
+        mPaint = new TextPaint(row.getPaint());
+        mPaint.setColor(row.getCurrentTextColor());
+        mSelectedPaint = new TextPaint(selectedRow.getPaint());
+        mSelectedPaint.setColor(selectedRow.getCurrentTextColor());
+        mHorizontalPadding = horizontalPadding;
+        mLayouts = keepLayouts ? new Layout[count] : null;
+        mSelectedLayouts = keepLayouts ? new Layout[count] : null;
+        mWidths = new float[count];
+    }
+
+    /**
+     * @param callback invoked on the UI thread once ready, can be null
+     */
+    void execute(@NonNull final Executor executor, final Callback callback) {
+        mCallback = callback;
+        executor.execute(this);
+    }
+
+    /**
+     * Replaces the callback, when the layouts are handed to another owner before being ready
+     */
+    void setCallback(final Callback callback) {
+        mCallback = callback;
+    }
+
+    void cancel() {
+        mCancelled = true;
+        mCallback = null;
+    }
+
+    boolean isCancelled() {
+        return mCancelled;
+    }
+
+    @Override
+    public void run() {
+        for (int i = 0; i < mTexts.length && !mCancelled; i++) {
+            final float width = measure(i);
+            if (width > mMaxWidth) {
+                mMaxWidth = width;
+                mWidestPosition = i;
+            }
+        }
+
+        if (mCancelled) {
+            return;
+        }
+
+        mReady = true;
+        sMainHandler.post(
+            new Runnable() {
+                @Override
+                public void run() {
+                    final Callback callback = mCallback;
+                    if (null != callback && !mCancelled) {
+                        callback.onTextLayoutsReady(OverMenuTextLayouts.this);
+                    }
+                }
+            });
+    }
+
+    /**
+     * Measures the entry with both appearances, laying it out if the layouts are kept
+     *
+     * @return the width of the entry, including the horizontal padding
+     */
+    private float measure(final int position) {
+        final CharSequence text = null != mTexts[position] ? mTexts[position] : "";
+        final float width;
+        if (null != mLayouts) {
+            mLayouts[position] = makeLayout(text, mPaint);
+            mSelectedLayouts[position] = makeLayout(text, mSelectedPaint);
+            width = Math.max(mLayouts[position].getWidth(), mSelectedLayouts[position].getWidth()) + mHorizontalPadding * 2;
+        } else {
+            // same width as the layouts: measuring is enough to populate the text layout cache
+            width = Math.max(desiredWidth(text, mPaint), desiredWidth(text, mSelectedPaint)) + mHorizontalPadding * 2;
+        }
+        mWidths[position] = width;
+        return width;
+    }
+
+    private static int desiredWidth(@NonNull final CharSequence text, @NonNull final TextPaint paint) {
+        return (int) Math.ceil(Layout.getDesiredWidth(text, paint));
+    }
+
+    /**
+     * Entries changed in place: only those entries are copied and laid out again, on the UI thread.
+     * Must only be called once ready.
+     *
+     * @return true if the widest entry became wider
+     */
+    boolean update(final int positionStart, final int itemCount) {
+        final float maxWidth = mMaxWidth;
+        final int end = Math.min(positionStart + itemCount, mTexts.length);
+        boolean narrower = false;
+        for (int i = positionStart; i < end; i++) {
+            mTexts[i] = mAdapter.getItem(i);
+            final float width = measure(i);
+            if (width > mMaxWidth) {
+                mMaxWidth = width;
+                mWidestPosition = i;
+            } else if (i == mWidestPosition && width < maxWidth) {
+                narrower = true;
+            }
+        }
+
+        if (narrower && mMaxWidth == maxWidth) {
+            // the widest entry got narrower: the widths are already there, no need to measure
+            mMaxWidth = 0;
+            mWidestPosition = -1;
+            for (int i = 0; i < mWidths.length; i++) {
+                if (mWidths[i] > mMaxWidth) {
+                    mMaxWidth = mWidths[i];
+                    mWidestPosition = i;
+                }
+            }
+        }
+        return mMaxWidth > maxWidth;
+    }
+
+    static Layout makeLayout(@NonNull final CharSequence text, @NonNull final TextPaint paint) {
+        return new StaticLayout(text, paint, desiredWidth(text, paint), Layout.Alignment.ALIGN_NORMAL, 1f, 0f, true);
+    }
+
+    boolean isReady() {
+        return mReady;
+    }
+
+    boolean isFor(final OverMenuAdapter adapter) {
+        return mAdapter == adapter && mTexts.length == adapter.getCount();
+    }
+
+    int getCount() {
+        return mTexts.length;
+    }
+
+    /**
+     * @return null if the layouts are not kept
+     */
+    Layout getLayout(final int position) {
+        return null != mLayouts ? mLayouts[position] : null;
+    }
+
+    /**
+     * @return null if the layouts are not kept
+     */
+    Layout getSelectedLayout(final int position) {
+        return null != mSelectedLayouts ? mSelectedLayouts[position] : null;
+    }
+
+    /**
+     * Width of the entry including the horizontal padding
+     */
+    float getWidth(final int position) {
+        return mWidths[position];
+    }
+
+    int getWidestPosition() {
+        return mWidestPosition;
+    }
+
+    float getMaxWidth() {
+        return mMaxWidth;
+    }
+}
@@ -0,0 +1,154 @@
+package it.sephiroth.android.library.overlaymenu;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+/**
+ * Runtime tracing of the menu, disabled by default.
+ * When enabled, typed events are recorded into a fixed size ring buffer (no strings are built
+ * while recording) and the expensive operations are wrapped in system trace sections, so they
+ * show up in systrace captures (API 18+).
+ * Events are recorded from the UI thread only.
+ */
+public final class OverMenuTrace {
+    static final String TAG = "OverMenuTrace";
+
+    /** the menu is shown, value: the default position */
+    public static final int EVENT_SHOW = 1;
+    /** the menu is hidden, value: the selected position */
+    public static final int EVENT_HIDE = 2;
+    /** the menu scrolled, value: the translation in pixels */
+    public static final int EVENT_SCROLL = 3;
+    /** the selected entry changed, value: the new position */
+    public static final int EVENT_SELECT = 4;
+    /** the menu geometry has been updated, value: the number of entries */
+    public static final int EVENT_LAYOUT = 5;
+    /** the menu entries changed, value: the number of entries */
+    public static final int EVENT_ENTRIES = 6;
+
+    static final String SECTION_SET_ENTRIES = "OverMenu.setEntries";
+    static final String SECTION_SHOW = "OverMenu.showMenuOverlay";
+    static final String SECTION_MEASURE = "OverMenu.measure";
+    static final String SECTION_LAYOUT = "OverMenu.layout";
+    static final String SECTION_GEOMETRY = "OverMenu.geometry";
+
+    public static final int CAPACITY = 512;
+
+    private static final long[] sTimes = new long[CAPACITY];
+    private static final int[] sTypes = new int[CAPACITY];
+    private static final int[] sValues = new int[CAPACITY];
+    private static int sNext;
+    private static int sCount;
+    private static boolean sEnabled;
+
+    private OverMenuTrace() {
+    }
+
+    public static void setEnabled(final boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    static void record(final int type, final int value) {
+        if (!sEnabled) {
+            return;
+        }
+        sTimes[sNext] = SystemClock.uptimeMillis();
+        sTypes[sNext] = type;
+        sValues[sNext] = value;
+        sNext = (sNext + 1) % CAPACITY;
+        if (sCount < CAPACITY) {
+            sCount++;
+        }
+    }
+
+    /**
+     * Tracing may be enabled or disabled while a section is open: the returned value
+     * must be passed to {@link #endSection(boolean)}, so only the opened sections are closed
+     *
+     * @return true if the section has been opened
+     */
+    static boolean beginSection(final String name) {
+        if (sEnabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(name);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param begun the value returned by {@link #beginSection(String)}
+     */
+    static void endSection(final boolean begun) {
+        if (begun && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * @return the number of events currently in the buffer
+     */
+    public static int getEventCount() {
+        return sCount;
+    }
+
+    /**
+     * Copies the recorded events, oldest first, into the given arrays
+     *
+     * @param times  event times, in the {@link SystemClock#uptimeMillis()} base
+     * @param types  event types, one of the EVENT_ constants
+     * @param values event values
+     * @return the number of events copied
+     */
+    public static int getEvents(final long[] times, final int[] types, final int[] values) {
+        final int count = Math.min(sCount, Math.min(times.length, Math.min(types.length, values.length)));
+        final int first = (sNext - sCount + CAPACITY) % CAPACITY;
+        for (int i = 0; i < count; i++) {
+            final int index = (first + i) % CAPACITY;
+            times[i] = sTimes[index];
+            types[i] = sTypes[index];
+            values[i] = sValues[index];
+        }
+        return count;
+    }
+
+    public static void clear() {
+        sNext = 0;
+        sCount = 0;
+    }
+
+    /**
+     * Prints the recorded events to the log
+     */
+    public static void dump() {
+        final int first = (sNext - sCount + CAPACITY) % CAPACITY;
+        for (int i = 0; i < sCount; i++) {
+            final int index = (first + i) % CAPACITY;
+            Log.d(TAG, sTimes[index] + " " + getEventName(sTypes[index]) + " " + sValues[index]);
+        }
+    }
+
+    static String getEventName(final int type) {
+        switch (type) {
+            case EVENT_SHOW:
+                return "show";
+            case EVENT_HIDE:
+                return "hide";
+            case EVENT_SCROLL:
+                return "scroll";
+            case EVENT_SELECT:
+                return "select";
+            case EVENT_LAYOUT:
+                return "layout";
+            case EVENT_ENTRIES:
+                return "entries";
+            default:
+                return String.valueOf(type);
+        }
+    }
+}
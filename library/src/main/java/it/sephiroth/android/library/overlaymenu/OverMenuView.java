@@ -5,18 +5,26 @@ import android.content.Context;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.graphics.Rect;
+import android.os.AsyncTask;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.SystemClock;
 import android.support.annotation.AnimRes;
+import android.support.annotation.NonNull;
+import android.support.v4.util.LruCache;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.GestureDetector;
-import android.view.Gravity;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.animation.Animation;
 import android.view.animation.AnimationUtils;
 import android.widget.FrameLayout;
 
-import static android.view.ViewGroup.LayoutParams.MATCH_PARENT;
+import java.util.ArrayList;
 
 /**
  * Created by alessandro crugnola
@@ -25,17 +33,81 @@ import static android.view.ViewGroup.LayoutParams.MATCH_PARENT;
  */
 public class OverMenuView extends View implements GestureDetector.OnGestureListener {
     static final String TAG = "OverMenuView";
-    public static final boolean DEBUG = true;
+    /**
+     * @deprecated logging has been replaced by {@link OverMenuTrace}, enabled at runtime
+     */
+    @Deprecated
+    public static final boolean DEBUG = false;
+
+    /** menu and selected text always use a hardware layer */
+    public static final int LAYER_POLICY_ALWAYS = 0;
+    /** hardware layers are only used while the menu is animating or scrolling */
+    public static final int LAYER_POLICY_DURING_ANIMATION = 1;
+    /** hardware layers are never used */
+    public static final int LAYER_POLICY_NEVER = 2;
+
+    /** the selection listener is invoked every time the selected entry changes */
+    public static final int SELECTION_DISPATCH_IMMEDIATE = 0;
+    /** the selection listener is invoked at most once per frame, with the latest selected entry */
+    public static final int SELECTION_DISPATCH_PER_FRAME = 1;
+
+    /** every touch move scrolls the menu as soon as it's delivered */
+    public static final int TOUCH_MODE_PER_EVENT = 0;
+    /** the touch moves delivered during a frame are applied together, once per frame */
+    public static final int TOUCH_MODE_PER_FRAME = 1;
+    /** as {@link #TOUCH_MODE_PER_FRAME}, moving the menu one frame ahead using the finger velocity: lower latency, less smooth */
+    public static final int TOUCH_MODE_PREDICTED = 2;
+
+    /** time the selection has to stay on an entry to open its submenu */
+    public static final long SUBMENU_DWELL_TIMEOUT = 600;
+    /** horizontal distance of the swipe which opens (to the right) or closes (to the left) a submenu */
+    static final float SUBMENU_SWIPE_DIP = 48;
+    /** maximum number of submenu entries kept in memory */
+    public static final int DEFAULT_SUBMENU_CACHE_SIZE = 1024;
     private boolean mActivateOnLongPress;
     private final GestureDetector gestureDetector;
     private CharSequence[] mEntries;
+    private OverMenuAdapter mAdapter;
+    private OverMenuHost mHost;
     private OverMenuLayout mOverMenuLayout;
+    private int mMenuStyle;
+    private OnSelectionChangeListener mSelectionListener;
+    private OnSelectionSettledListener mSettledListener;
+    private int mSelectionDispatch;
+    private int mTouchMode;
+    private boolean mPrecomputeText;
+    private boolean mSectionIndex;
+    private int mLayerPolicy;
+    private int mDefaultPosition = -1;
+    private int mSelectedPosition = -1;
+    private boolean mAnchorChanged;
+    private SubmenuLoader mSubmenuLoader;
+    private LruCache<Long, Submenu> mSubmenuCache = new SubmenuCache(DEFAULT_SUBMENU_CACHE_SIZE);
+    private final ArrayList<Submenu> mSubmenuLevels = new ArrayList<Submenu>();
+    private SubmenuTask mSubmenuTask;
+    private float mSubmenuSwipeThreshold;
+    private float mSwipeX;
+    private float mSwipeY;
+    private boolean mAnchorDirty = true;
+    private View mAnchorView;
+    private ViewTreeObserver mAnchorObserver;
+    private final Rect mAnchorRect = new Rect();
+    private final Rect mAnchorBounds = new Rect();
+    private final int[] mAnchorLocation = new int[2];
+    private final Rect mRootRect = new Rect();
+    private int mAnchorTranslationX;
+    private int mAnchorTranslationY;
     private boolean mMenuShown;
     private Animation mInAnimation;
     private Animation mOutAnimation;
     private int mTargetViewId;
     private OnMenuVisibilityChangeListener menuVisibilityChangeListener;
     private boolean mEntriesChanged;
+    private OverMenuGeometrySnapshot mSavedGeometry;
+    private boolean mPrewarm;
+    private boolean mPrewarmPending;
+    private OverMenuMetricsListener mMetrics;
+    private long mShowTime;
 
     public OverMenuView(final Context context) {
         this(context, null);
@@ -57,17 +129,28 @@ public class OverMenuView extends View implements GestureDetector.OnGestureListe
             context.obtainStyledAttributes(attrs, R.styleable.OverMenuView, defStyleAttr, R.style.OverMenuViewDefaultStyle);
 
         final boolean activateOnLongPress = array.getBoolean(R.styleable.OverMenuView_overmenu_activateOnLongPress, false);
-        final int menuStyle = array.getResourceId(R.styleable.OverMenuView_overmenu_menuStyle, R.style.OverMenuLayoutDefaultStyle);
+        mMenuStyle = array.getResourceId(R.styleable.OverMenuView_overmenu_menuStyle, R.style.OverMenuLayoutDefaultStyle);
         final CharSequence[] entries = array.getTextArray(R.styleable.OverMenuView_android_entries);
         setInAnimation(context, array.getResourceId(R.styleable.OverMenuView_android_inAnimation, 0));
         setOutAnimation(context, array.getResourceId(R.styleable.OverMenuView_android_outAnimation, 0));
 
         mTargetViewId = array.getResourceId(R.styleable.OverMenuView_overmenu_centerInView, 0);
+        mPrewarm = array.getBoolean(R.styleable.OverMenuView_overmenu_prewarm, false);
 
         array.recycle();
 
+        // defaults of the shared overlay settings, applied every time this view binds to it
+        array = context.obtainStyledAttributes(mMenuStyle, R.styleable.OverMenuLayout);
+        mPrecomputeText = array.getBoolean(R.styleable.OverMenuLayout_overmenu_precomputeText, false);
+        mLayerPolicy = array.getInt(R.styleable.OverMenuLayout_overmenu_layerPolicy, LAYER_POLICY_ALWAYS);
+        mSelectionDispatch = array.getInt(R.styleable.OverMenuLayout_overmenu_selectionDispatch, SELECTION_DISPATCH_IMMEDIATE);
+        mSectionIndex = array.getBoolean(R.styleable.OverMenuLayout_overmenu_sectionIndex, false);
+        mTouchMode = array.getInt(R.styleable.OverMenuLayout_overmenu_touchMode, TOUCH_MODE_PER_EVENT);
+        array.recycle();
+
+        mSubmenuSwipeThreshold = SUBMENU_SWIPE_DIP * getResources().getDisplayMetrics().density;
+
         setActivateOnLongPress(activateOnLongPress);
-        createMenuOverlay(menuStyle);
         setEntries(entries);
         setWillNotDraw(true);
     }
@@ -93,11 +176,61 @@ public class OverMenuView extends View implements GestureDetector.OnGestureListe
     }
 
     public void setOnSelectionChangedListener(final OnSelectionChangeListener listener) {
-        mOverMenuLayout.setOnSelectionChangeListener(listener);
+        mSelectionListener = listener;
+        if (null != mOverMenuLayout) {
+            mOverMenuLayout.setOnSelectionChangeListener(getSelectionRelay());
+        }
     }
 
     public OnSelectionChangeListener getOnSelectionChangedListener() {
-        return mOverMenuLayout.getOnSelectionChangeListener();
+        return mSelectionListener;
+    }
+
+    /**
+     * Sets a listener invoked once per gesture, when the finger is lifted and the menu stopped moving
+     */
+    public void setOnSelectionSettledListener(final OnSelectionSettledListener listener) {
+        mSettledListener = listener;
+        if (null != mOverMenuLayout) {
+            mOverMenuLayout.setOnSelectionSettledListener(listener);
+        }
+    }
+
+    public OnSelectionSettledListener getOnSelectionSettledListener() {
+        return mSettledListener;
+    }
+
+    /**
+     * Sets how often the {@link OnSelectionChangeListener} is invoked while scrolling.
+     *
+     * @param mode one of {@link #SELECTION_DISPATCH_IMMEDIATE} or {@link #SELECTION_DISPATCH_PER_FRAME}
+     */
+    public void setSelectionDispatch(final int mode) {
+        mSelectionDispatch = mode;
+        if (null != mOverMenuLayout) {
+            mOverMenuLayout.setSelectionDispatch(mode);
+        }
+    }
+
+    public int getSelectionDispatch() {
+        return mSelectionDispatch;
+    }
+
+    /**
+     * Sets how the touch moves scroll the menu. On high rate touch panels several moves are delivered
+     * in each frame: {@link #TOUCH_MODE_PER_FRAME} applies them with a single menu update per frame.
+     *
+     * @param mode one of {@link #TOUCH_MODE_PER_EVENT}, {@link #TOUCH_MODE_PER_FRAME} or {@link #TOUCH_MODE_PREDICTED}
+     */
+    public void setTouchMode(final int mode) {
+        mTouchMode = mode;
+        if (null != mOverMenuLayout) {
+            mOverMenuLayout.setTouchMode(mode);
+        }
+    }
+
+    public int getTouchMode() {
+        return mTouchMode;
     }
 
     public void setOnMenuVisibilityChangeListener(
@@ -109,6 +242,20 @@ public class OverMenuView extends View implements GestureDetector.OnGestureListe
         return menuVisibilityChangeListener;
     }
 
+    /**
+     * Sets a listener receiving the menu performance measurements, null to stop measuring
+     */
+    public void setMetricsListener(final OverMenuMetricsListener metrics) {
+        mMetrics = metrics;
+        if (null != mOverMenuLayout) {
+            mOverMenuLayout.setMetricsListener(metrics);
+        }
+    }
+
+    public OverMenuMetricsListener getMetricsListener() {
+        return mMetrics;
+    }
+
     public Animation getInAnimation() {
         return mInAnimation;
     }
@@ -118,9 +265,6 @@ public class OverMenuView extends View implements GestureDetector.OnGestureListe
     }
 
     public void setActivateOnLongPress(final boolean value) {
-        if (DEBUG) {
-            Log.d(TAG, "setActivateOnLongPress: " + value);
-        }
         mActivateOnLongPress = value;
         gestureDetector.setIsLongpressEnabled(value);
     }
@@ -130,106 +274,426 @@ public class OverMenuView extends View implements GestureDetector.OnGestureListe
     }
 
     public void setEntries(CharSequence[] entries) {
-        if (DEBUG) {
-            Log.i(TAG, "setEntries");
-        }
+        final boolean traced = OverMenuTrace.beginSection(OverMenuTrace.SECTION_SET_ENTRIES);
+        setAdapter(null != entries ? new OverMenuAdapter.ArrayAdapter(entries) : null);
         mEntries = entries;
-        mEntriesChanged = true;
+        OverMenuTrace.endSection(traced);
     }
 
+    /**
+     * Returns the entries passed to {@link #setEntries(CharSequence[])}, null if
+     * an adapter has been set using {@link #setAdapter(OverMenuAdapter)}
+     */
     @SuppressWarnings ("unused")
     public CharSequence[] getEntries() {
         return mEntries;
     }
 
-    private void createMenuOverlay(final int menuStyle) {
-        if (DEBUG) {
-            Log.i(TAG, "createMenuOverlay");
+    /**
+     * Sets the data source of the menu. Changes notified by the adapter will only
+     * update the affected rows.
+     */
+    public void setAdapter(OverMenuAdapter adapter) {
+        mAdapter = adapter;
+        mEntries = null;
+        mEntriesChanged = true;
+
+        // submenu ids belong to the previous entries
+        cancelSubmenuTask();
+        mSubmenuCache.evictAll();
+        if (!mSubmenuLevels.isEmpty() && null != mSubmenuLevels.get(0).textLayouts) {
+            mSubmenuLevels.get(0).textLayouts.cancel();
+        }
+        mSubmenuLevels.clear();
+        mSubmenuLevels.add(new Submenu(OverMenuAdapter.NO_ID, adapter));
+
+        precomputeText();
+    }
+
+    /**
+     * Starts measuring the top level entries now, instead of waiting for the menu to be shown,
+     * even if the overlay is bound to another view
+     */
+    private void precomputeText() {
+        final Submenu level = mSubmenuLevels.get(0);
+        if (!mPrecomputeText || null == mAdapter || null != level.textLayouts || isInEditMode()
+            || !(getContext() instanceof Activity)) {
+            return;
+        }
+        level.textLayouts = getHost().precomputeText(mMenuStyle, mAdapter);
+    }
+
+    public OverMenuAdapter getAdapter() {
+        return mAdapter;
+    }
+
+    /**
+     * If true the entries text will be measured and laid out in a background thread as soon as
+     * they're set, instead of when the menu is shown
+     */
+    public void setPrecomputeText(final boolean value) {
+        mPrecomputeText = value;
+        if (null != mOverMenuLayout) {
+            mOverMenuLayout.setPrecomputeText(value);
+        }
+        precomputeText();
+    }
+
+    public boolean getPrecomputeText() {
+        return mPrecomputeText;
+    }
+
+    /**
+     * If true the entries, expected to be sorted, are indexed by their first letter in a background
+     * thread and a strip with the letters is shown next to the menu: moving the finger over the strip
+     * jumps to the first entry of the letter under it
+     */
+    public void setSectionIndexEnabled(final boolean enabled) {
+        mSectionIndex = enabled;
+        if (null != mOverMenuLayout) {
+            mOverMenuLayout.setSectionIndexEnabled(enabled);
         }
+    }
 
-        FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(MATCH_PARENT, MATCH_PARENT);
-        params.gravity = Gravity.CENTER;
-        mOverMenuLayout = new OverMenuLayout(getContext(), null, 0, menuStyle);
-        mOverMenuLayout.setId(R.id.OverMenuId);
-        mOverMenuLayout.setLayoutParams(params);
+    public boolean isSectionIndexEnabled() {
+        return mSectionIndex;
     }
 
-    private void showMenuOverlay() {
-        if (DEBUG) {
-            Log.i(TAG, "showMenuOverlay");
+    /**
+     * While the menu is shown, selects the first entry starting with the given letter, or the first
+     * entry of the following letter. Requires the section index.
+     *
+     * @return true if the selection changed
+     * @see #setSectionIndexEnabled(boolean)
+     */
+    public boolean jumpToSection(final CharSequence prefix) {
+        return mMenuShown && null != mOverMenuLayout && mOverMenuLayout.jumpToSection(prefix);
+    }
+
+    /**
+     * Sets when the menu will use hardware layers.
+     *
+     * @param policy one of {@link #LAYER_POLICY_ALWAYS}, {@link #LAYER_POLICY_DURING_ANIMATION}
+     *               or {@link #LAYER_POLICY_NEVER}
+     */
+    public void setLayerPolicy(final int policy) {
+        mLayerPolicy = policy;
+        if (null != mOverMenuLayout) {
+            mOverMenuLayout.setLayerPolicy(policy);
         }
+    }
 
+    public int getLayerPolicy() {
+        return mLayerPolicy;
+    }
+
+    /**
+     * Returns the overlay of this view's menu style, shared with the other triggers in
+     * the same window, binding it to this view
+     *
+     * @return null if another view is showing its menu on the overlay
+     */
+    private OverMenuLayout bindMenuOverlay() {
+        return getHost().bind(this, mMenuStyle);
+    }
+
+    private OverMenuHost getHost() {
+        if (null == mHost) {
+            mHost = OverMenuHost.get((Activity) getContext());
+        }
+        return mHost;
+    }
+
+    /**
+     * The shared overlay is now used by this view: entries, settings and anchor are applied to it
+     */
+    void onOverlayBound(@NonNull final OverMenuLayout overlay) {
+        mOverMenuLayout = overlay;
+        overlay.setOnSelectionChangeListener(getSelectionRelay());
+        overlay.setOnSelectionSettledListener(mSettledListener);
+        overlay.setSelectionDispatch(mSelectionDispatch);
+        overlay.setTouchMode(mTouchMode);
+        overlay.setMetricsListener(mMetrics);
+        overlay.setPrecomputeText(mPrecomputeText);
+        overlay.setLayerPolicy(mLayerPolicy);
+        overlay.setSectionIndexEnabled(mSectionIndex);
+        overlay.setNextPosition(mDefaultPosition);
+        mEntriesChanged = true;
+        mAnchorChanged = true;
+    }
+
+    /**
+     * The shared overlay has been taken by another view
+     */
+    void onOverlayUnbound(@NonNull final OverMenuLayout overlay) {
         if (mMenuShown) {
-            Log.w(TAG, "menu already shown");
+            // nobody else would hide it
+            overlay.stopFling();
+            overlay.hide(null);
+            mMenuShown = false;
+            if (null != menuVisibilityChangeListener) {
+                menuVisibilityChangeListener.onVisibilityChanged(this, false);
+            }
+        }
+        overlay.getViewTreeObserver().removeOnPreDrawListener(mFirstFrameListener);
+        if (mSubmenuLevels.size() > 1) {
+            // the overlay is showing a submenu: the root level will be restored on the next bind
+            mDefaultPosition = mSubmenuLevels.get(0).position;
+            mSelectedPosition = -1;
+            closeSubmenus();
+        } else {
+            mDefaultPosition = overlay.getNextPosition();
+            mSelectedPosition = overlay.getSelectedPosition();
+        }
+        removeCallbacks(mSubmenuDwellAction);
+        mOverMenuLayout = null;
+    }
+
+    /**
+     * Sets the entries to the overlay, if changed since the last time
+     */
+    private void applyEntries() {
+        if (mEntriesChanged) {
+            // precomputed by this view, if enabled
+            mOverMenuLayout.setAdapter(mAdapter, mSubmenuLevels.get(0).textLayouts);
+            mEntriesChanged = false;
+
+            if (null != mSavedGeometry) {
+                // recreated view: positioned using the saved geometry, if still valid, before the layout pass
+                mOverMenuLayout.restoreGeometry(mSavedGeometry);
+                mSavedGeometry = null;
+            }
+        }
+    }
+
+    private void attachMenuOverlay(final FrameLayout root) {
+        root.addView(mOverMenuLayout);
+        updateMenuOverlayAnchor(root);
+    }
+
+    private void updateMenuOverlayAnchor(final FrameLayout root) {
+        if (null != mAnchorObserver) {
+            // the target may have been moved without a layout pass
+            checkAnchor();
+        }
+        mAnchorChanged = false;
+
+        if (mAnchorDirty) {
+            mAnchorDirty = false;
+            mAnchorTranslationX = 0;
+            mAnchorTranslationY = 0;
+
+            if (null != mAnchorView) {
+                root.getGlobalVisibleRect(mRootRect);
+                mAnchorView.getGlobalVisibleRect(mAnchorRect);
+
+                mAnchorTranslationY = -(mRootRect.height() / 2 - (mAnchorRect.height() / 2 + mAnchorRect.top));
+                mAnchorTranslationX = -(mRootRect.width() / 2 - (mAnchorRect.width() / 2 + mAnchorRect.left));
+            }
+        }
+
+        mOverMenuLayout.setTranslationY(mAnchorTranslationY);
+        mOverMenuLayout.setTranslationX(mAnchorTranslationX);
+    }
+
+    /**
+     * Starts following the overmenu_centerInView target: the target is looked up again after every
+     * layout pass until found, and its position in the window is checked after every layout pass
+     * and scroll, so moving one of its ancestors is noticed too. The overlay offset is only computed
+     * again when the target moved.
+     */
+    private void trackAnchor() {
+        if (mTargetViewId == 0 || null != mAnchorObserver || null == getWindowToken()) {
             return;
         }
 
-        FrameLayout root = (FrameLayout) ((Activity) getContext()).getWindow().getDecorView();
-        int translationY = 0;
-        int translationX = 0;
+        mAnchorObserver = getViewTreeObserver();
+        mAnchorObserver.addOnGlobalLayoutListener(mAnchorLayoutListener);
+        mAnchorObserver.addOnScrollChangedListener(mAnchorScrollListener);
+        checkAnchor();
+    }
 
-        if (mTargetViewId != 0) {
-            View view = ((Activity) getContext()).findViewById(mTargetViewId);
-            if (null != view) {
-                Rect outRect = new Rect();
-                Rect outRootRect = new Rect();
-                root.getGlobalVisibleRect(outRootRect);
-                view.getGlobalVisibleRect(outRect);
+    private void untrackAnchor() {
+        if (null != mAnchorObserver) {
+            if (mAnchorObserver.isAlive()) {
+                mAnchorObserver.removeGlobalOnLayoutListener(mAnchorLayoutListener);
+                mAnchorObserver.removeOnScrollChangedListener(mAnchorScrollListener);
+            }
+            mAnchorObserver = null;
+        }
+        mAnchorView = null;
+        mAnchorBounds.setEmpty();
+        mAnchorDirty = true;
+    }
 
-                final int[] point = new int[2];
-                view.getLocationOnScreen(point);
+    /**
+     * Looks up the target if not found yet (or removed since), then marks the anchor as changed
+     * if the target moved or has been resized
+     */
+    private void checkAnchor() {
+        if (null != mAnchorView && null == mAnchorView.getWindowToken()) {
+            // removed: the overlay is centered again until the target is back
+            mAnchorView = null;
+            mAnchorBounds.setEmpty();
+            mAnchorDirty = true;
+            mAnchorChanged = true;
+        }
 
-                translationY = -(outRootRect.height() / 2 - (outRect.height() / 2 + outRect.top));
-                translationX = -(outRootRect.width() / 2 - (outRect.width() / 2 + outRect.left));
+        if (null == mAnchorView) {
+            mAnchorView = getRootView().findViewById(mTargetViewId);
+            if (null == mAnchorView) {
+                return;
+            }
+        }
 
-                if (DEBUG) {
-                    Log.v(TAG, "outRootRect: " + outRootRect);
-                    Log.v(TAG, "outRect: " + outRect);
-                    Log.v(TAG, "position: " + point[0] + "x" + point[1]);
+        mAnchorView.getLocationInWindow(mAnchorLocation);
+        final int left = mAnchorLocation[0];
+        final int top = mAnchorLocation[1];
+        if (left != mAnchorBounds.left || top != mAnchorBounds.top
+            || mAnchorView.getWidth() != mAnchorBounds.width() || mAnchorView.getHeight() != mAnchorBounds.height()) {
+            mAnchorBounds.set(left, top, left + mAnchorView.getWidth(), top + mAnchorView.getHeight());
+            mAnchorDirty = true;
+            mAnchorChanged = true;
+        }
+    }
+
+    private final ViewTreeObserver.OnGlobalLayoutListener mAnchorLayoutListener = new ViewTreeObserver.OnGlobalLayoutListener() {
+        @Override
+        public void onGlobalLayout() {
+            checkAnchor();
+        }
+    };
 
-                    Log.v(TAG, "translationX: " + translationX);
-                    Log.v(TAG, "translationY: " + translationY);
-                }
+    private final ViewTreeObserver.OnScrollChangedListener mAnchorScrollListener = new ViewTreeObserver.OnScrollChangedListener() {
+        @Override
+        public void onScrollChanged() {
+            // the target may be inside a scrolling container
+            checkAnchor();
+        }
+    };
+
+    /**
+     * Attaches, measures and lays out the menu overlay ahead of time, keeping it invisible.
+     * The next time the menu is shown only its visibility will change.
+     * If this view is not attached to a window yet, the overlay will be prepared once it is.
+     */
+    public void prewarm() {
+        if (null == getWindowToken()) {
+            mPrewarmPending = true;
+            return;
+        }
+
+        mPrewarmPending = false;
+
+        if (mMenuShown || null == bindMenuOverlay()) {
+            // the overlay is showing the menu of another view
+            return;
+        }
+
+        final FrameLayout root = mHost.getRoot();
+
+        applyEntries();
+
+        if (mOverMenuLayout.getParent() != root) {
+            mOverMenuLayout.setVisibility(View.INVISIBLE);
+            attachMenuOverlay(root);
+        } else if (mAnchorChanged) {
+            updateMenuOverlayAnchor(root);
+        }
+    }
+
+    private final MessageQueue.IdleHandler mPrewarmIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            if (null != getWindowToken()) {
+                prewarm();
             }
+            return false;
         }
+    };
 
-        final boolean entriesChanged = mEntriesChanged;
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (!isInEditMode() && getContext() instanceof Activity) {
+            getHost().register(mMenuStyle);
+        }
+        trackAnchor();
+        if (mPrewarm || mPrewarmPending) {
+            Looper.myQueue().addIdleHandler(mPrewarmIdleHandler);
+        }
+    }
 
-        if (entriesChanged) {
-            mOverMenuLayout.setEntries(mEntries);
-            mEntriesChanged = false;
+    /**
+     * @param eventTime time of the touch which triggered the menu, in the {@link SystemClock#uptimeMillis()} base
+     */
+    private void showMenuOverlay(final long eventTime) {
+        if (mMenuShown) {
+            Log.w(TAG, "menu already shown");
+            return;
         }
 
-        if (root.findViewById(R.id.OverMenuId) == null) {
-            root.addView(mOverMenuLayout);
-            mOverMenuLayout.setTranslationY(translationY);
-            mOverMenuLayout.setTranslationX(translationX);
-        } else if (!entriesChanged) {
-            mOverMenuLayout.updatePosition();
+        if (null == bindMenuOverlay()) {
+            Log.w(TAG, "menu of another view already shown");
+            return;
         }
 
-        if (null != mInAnimation) {
-            OverMenuLayout.showView(mOverMenuLayout, mInAnimation);
+        final boolean traced = OverMenuTrace.beginSection(OverMenuTrace.SECTION_SHOW);
+        final FrameLayout root = mHost.getRoot();
+
+        // every gesture starts from the top level
+        if (mSubmenuLevels.size() > 1) {
+            mOverMenuLayout.setNextPosition(mSubmenuLevels.get(0).position);
+            closeSubmenus();
+        }
+        mSwipeX = 0;
+        mSwipeY = 0;
+
+        applyEntries();
+
+        if (mOverMenuLayout.getParent() != root) {
+            attachMenuOverlay(root);
         } else {
-            mOverMenuLayout.setVisibility(View.VISIBLE);
+            if (mAnchorChanged) {
+                updateMenuOverlayAnchor(root);
+            }
+            if (!mOverMenuLayout.isGeometryPending()) {
+                mOverMenuLayout.updatePosition();
+            }
+        }
+
+        mOverMenuLayout.show(mInAnimation);
+
+        if (null != mMetrics) {
+            mShowTime = eventTime;
+            mOverMenuLayout.getViewTreeObserver().removeOnPreDrawListener(mFirstFrameListener);
+            mOverMenuLayout.getViewTreeObserver().addOnPreDrawListener(mFirstFrameListener);
         }
 
         if (null != menuVisibilityChangeListener) {
             menuVisibilityChangeListener.onVisibilityChanged(this, true);
         }
         mMenuShown = true;
+        OverMenuTrace.endSection(traced);
     }
 
-    private void hideMenuOverlay() {
-        if (DEBUG) {
-            Log.i(TAG, "hideMenuOverlay");
-        }
-        if (mMenuShown) {
-            if (null != mOutAnimation) {
-                OverMenuLayout.hideView(mOverMenuLayout, mOutAnimation);
-            } else {
-                mOverMenuLayout.setVisibility(View.INVISIBLE);
+    private final ViewTreeObserver.OnPreDrawListener mFirstFrameListener = new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw() {
+            if (null != mOverMenuLayout) {
+                mOverMenuLayout.getViewTreeObserver().removeOnPreDrawListener(this);
             }
+            if (null != mMetrics) {
+                mMetrics.onShowLatency(SystemClock.uptimeMillis() - mShowTime);
+            }
+            return true;
+        }
+    };
+
+    private void hideMenuOverlay() {
+        removeCallbacks(mSubmenuDwellAction);
+        if (mMenuShown && null != mOverMenuLayout) {
+            mOverMenuLayout.hide(mOutAnimation);
 
             if (null != menuVisibilityChangeListener) {
                 menuVisibilityChangeListener.onVisibilityChanged(this, false);
@@ -241,16 +705,8 @@ public class OverMenuView extends View implements GestureDetector.OnGestureListe
         }
     }
 
-    private void removeMenuOverlay() {
-        if (DEBUG) {
-            Log.i(TAG, "removeMenuOverlay");
-        }
-        FrameLayout root = (FrameLayout) ((Activity) getContext()).getWindow().getDecorView();
-        View view = root.findViewById(R.id.OverMenuId);
-        if (null != view) {
-            root.removeView(view);
-        }
-        mMenuShown = false;
+    boolean isMenuShown() {
+        return mMenuShown;
     }
 
     @Override
@@ -261,6 +717,13 @@ public class OverMenuView extends View implements GestureDetector.OnGestureListe
 
         final int action = event.getActionMasked();
 
+        if (action == MotionEvent.ACTION_DOWN) {
+            // catch the menu while it's still flinging
+            if (null != mOverMenuLayout) {
+                mOverMenuLayout.stopFling();
+            }
+        }
+
         if (!gestureDetector.onTouchEvent(event) && action == MotionEvent.ACTION_UP) {
             return onUp(event);
         }
@@ -269,8 +732,8 @@ public class OverMenuView extends View implements GestureDetector.OnGestureListe
     }
 
     public boolean onUp(final MotionEvent event) {
-        if (DEBUG) {
-            Log.i(TAG, "onUp");
+        if (mMenuShown) {
+            mOverMenuLayout.onSelectionSettled();
         }
         hideMenuOverlay();
         return true;
@@ -279,10 +742,7 @@ public class OverMenuView extends View implements GestureDetector.OnGestureListe
     @Override
     public boolean onDown(final MotionEvent e) {
         if (!getActivateOnLongPress()) {
-            if (DEBUG) {
-                Log.i(TAG, "onDown");
-            }
-            showMenuOverlay();
+            showMenuOverlay(e.getEventTime());
             return true;
         }
         return false;
@@ -300,6 +760,9 @@ public class OverMenuView extends View implements GestureDetector.OnGestureListe
     public boolean onScroll(final MotionEvent e1, final MotionEvent e2, final float distanceX, final float distanceY) {
         if (mMenuShown) {
             mOverMenuLayout.onScroll(e1, e2, distanceX, distanceY);
+            if (null != mSubmenuLoader && !mOverMenuLayout.isScrubbing()) {
+                onSubmenuSwipe(distanceX, distanceY);
+            }
         }
         return false;
     }
@@ -307,41 +770,404 @@ public class OverMenuView extends View implements GestureDetector.OnGestureListe
     @Override
     public void onLongPress(final MotionEvent e) {
         if (getActivateOnLongPress()) {
-            if (DEBUG) {
-                Log.i(TAG, "onLongPress");
-            }
-            showMenuOverlay();
+            // the long press timeout is not part of the latency
+            showMenuOverlay(SystemClock.uptimeMillis());
         }
     }
 
     @Override
     public boolean onFling(final MotionEvent e1, final MotionEvent e2, final float velocityX, final float velocityY) {
-        return false;
+        // keep the menu visible until the fling settles
+        return mMenuShown && mOverMenuLayout.fling(velocityY, mHideMenuAction);
+    }
+
+    private final Runnable mHideMenuAction = new Runnable() {
+        @Override
+        public void run() {
+            if (null != mOverMenuLayout) {
+                mOverMenuLayout.onSelectionSettled();
+            }
+            hideMenuOverlay();
+        }
+    };
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        final SavedState state = new SavedState(super.onSaveInstanceState());
+        if (null == mOverMenuLayout) {
+            state.position = mDefaultPosition;
+            state.geometry = mSavedGeometry;
+        } else if (mSubmenuLevels.size() > 1) {
+            // the overlay is showing a submenu
+            state.position = mSubmenuLevels.get(0).position;
+        } else {
+            state.position = mOverMenuLayout.getNextPosition();
+            state.geometry = mOverMenuLayout.saveGeometry();
+        }
+        return state;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(final Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+
+        final SavedState savedState = (SavedState) state;
+        super.onRestoreInstanceState(savedState.getSuperState());
+        mDefaultPosition = savedState.position;
+        mSelectedPosition = savedState.position;
+        mSavedGeometry = savedState.geometry;
+        if (null != mOverMenuLayout) {
+            mOverMenuLayout.setNextPosition(savedState.position);
+        }
+    }
+
+    /**
+     * Selected entry and menu geometry
+     */
+    static class SavedState extends BaseSavedState {
+        int position = -1;
+        OverMenuGeometrySnapshot geometry;
+
+        SavedState(final Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(final Parcel in) {
+            super(in);
+            position = in.readInt();
+            if (in.readInt() != 0) {
+                geometry = OverMenuGeometrySnapshot.readFromParcel(in);
+            }
+        }
+
+        @Override
+        public void writeToParcel(@NonNull final Parcel out, final int flags) {
+            super.writeToParcel(out, flags);
+            out.writeInt(position);
+            out.writeInt(null != geometry ? 1 : 0);
+            if (null != geometry) {
+                geometry.writeToParcel(out);
+            }
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(final Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(final int size) {
+                return new SavedState[size];
+            }
+        };
     }
 
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
+        Looper.myQueue().removeIdleHandler(mPrewarmIdleHandler);
+        untrackAnchor();
+        cancelSubmenuTask();
+        removeCallbacks(mSubmenuDwellAction);
+        if (mMenuShown && null != mOverMenuLayout) {
+            mOverMenuLayout.hide(null);
+        }
         mMenuShown = false;
-        mOverMenuLayout = null;
+        // the overlay is released with the last trigger using it
+        if (null != mHost) {
+            mHost.unregister(this, mMenuStyle);
+        }
     }
 
     public void setDefaultPosition(final int position) {
-        mOverMenuLayout.setNextPosition(position);
+        mDefaultPosition = position;
+        if (null != mOverMenuLayout) {
+            mOverMenuLayout.setNextPosition(position);
+        }
     }
 
     public int getDefaultPosition() {
-        return mOverMenuLayout.getNextPosition();
+        return null != mOverMenuLayout ? mOverMenuLayout.getNextPosition() : mDefaultPosition;
     }
 
     public int getSelectedPosition() {
-        return mOverMenuLayout.getSelectedPosition();
+        return null != mOverMenuLayout ? mOverMenuLayout.getSelectedPosition() : mSelectedPosition;
+    }
+
+    /**
+     * Sets the loader of the submenus: dwelling on an entry with a submenu, or swiping to the right,
+     * opens its children in place, while swiping to the left goes back to the parent entries.
+     * Children are loaded in background and cached, see {@link #setSubmenuCacheSize(int)}.
+     */
+    public void setSubmenuLoader(final SubmenuLoader loader) {
+        mSubmenuLoader = loader;
+        if (null != mOverMenuLayout) {
+            mOverMenuLayout.setOnSelectionChangeListener(getSelectionRelay());
+        }
+    }
+
+    public SubmenuLoader getSubmenuLoader() {
+        return mSubmenuLoader;
+    }
+
+    /**
+     * Maximum number of submenu entries kept in memory, across all the cached submenus
+     */
+    public void setSubmenuCacheSize(final int entries) {
+        mSubmenuCache = new SubmenuCache(entries);
+    }
+
+    /**
+     * Id of the entry whose submenu is currently shown, {@link OverMenuAdapter#NO_ID} for the top level entries
+     */
+    public long getSubmenuParentId() {
+        return mSubmenuLevels.isEmpty() ? OverMenuAdapter.NO_ID : mSubmenuLevels.get(mSubmenuLevels.size() - 1).parentId;
+    }
+
+    /**
+     * Entries currently shown, the adapter of a submenu or the top level one
+     */
+    private Submenu getCurrentLevel() {
+        return mSubmenuLevels.get(mSubmenuLevels.size() - 1);
+    }
+
+    private OnSelectionChangeListener getSelectionRelay() {
+        return null != mSubmenuLoader ? mSelectionRelay : mSelectionListener;
+    }
+
+    /**
+     * Used when submenus are enabled, to know when the selection dwells on an entry
+     */
+    private final OnSelectionChangeListener mSelectionRelay = new OnSelectionChangeListener() {
+        @Override
+        public void onSelectionChanged(final int position) {
+            mSwipeX = 0;
+            mSwipeY = 0;
+            removeCallbacks(mSubmenuDwellAction);
+            final OverMenuAdapter adapter = getCurrentLevel().adapter;
+            if (mMenuShown && null != adapter && position > -1 && adapter.hasSubmenu(position)) {
+                postDelayed(mSubmenuDwellAction, SUBMENU_DWELL_TIMEOUT);
+            }
+
+            if (null != mSelectionListener) {
+                mSelectionListener.onSelectionChanged(position);
+            }
+        }
+    };
+
+    private final Runnable mSubmenuDwellAction = new Runnable() {
+        @Override
+        public void run() {
+            if (mMenuShown && null != mOverMenuLayout && !mOverMenuLayout.isFlinging()) {
+                openSubmenu(mOverMenuLayout.getSelectedPosition());
+            }
+        }
+    };
+
+    private void onSubmenuSwipe(final float distanceX, final float distanceY) {
+        mSwipeX -= distanceX;
+        mSwipeY += Math.abs(distanceY);
+
+        if (Math.abs(mSwipeX) > mSubmenuSwipeThreshold && Math.abs(mSwipeX) > mSwipeY) {
+            if (mSwipeX > 0) {
+                openSubmenu(mOverMenuLayout.getSelectedPosition());
+            } else {
+                closeSubmenu();
+            }
+            mSwipeX = 0;
+            mSwipeY = 0;
+        }
+    }
+
+    private void openSubmenu(final int position) {
+        final Submenu level = getCurrentLevel();
+        if (null == mSubmenuLoader || null == level.adapter || position < 0 || !level.adapter.hasSubmenu(position)) {
+            return;
+        }
+
+        removeCallbacks(mSubmenuDwellAction);
+        final long parentId = level.adapter.getItemId(position);
+        final Submenu submenu = mSubmenuCache.get(parentId);
+        if (null != submenu) {
+            enterSubmenu(submenu);
+            return;
+        }
+
+        if (null != mSubmenuTask) {
+            if (mSubmenuTask.parentId == parentId) {
+                return;
+            }
+            cancelSubmenuTask();
+        }
+
+        mSubmenuTask = new SubmenuTask(mSubmenuLoader, level.adapter, position, parentId);
+        mSubmenuTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    private void onSubmenuLoaded(@NonNull final SubmenuTask task, final OverMenuAdapter adapter) {
+        mSubmenuTask = null;
+        if (null == adapter) {
+            return;
+        }
+
+        final Submenu submenu = new Submenu(task.parentId, adapter);
+        mSubmenuCache.put(task.parentId, submenu);
+
+        // only if the finger is still on its parent
+        if (mMenuShown && null != mOverMenuLayout && getCurrentLevel().adapter == task.parentAdapter
+            && mOverMenuLayout.getSelectedPosition() == task.position) {
+            enterSubmenu(submenu);
+        }
+    }
+
+    private void enterSubmenu(@NonNull final Submenu submenu) {
+        if (mSubmenuLevels.contains(submenu)) {
+            return;
+        }
+        saveLevel();
+        mSubmenuLevels.add(submenu);
+        showLevel(submenu);
+    }
+
+    private void closeSubmenu() {
+        if (mSubmenuLevels.size() > 1) {
+            saveLevel();
+            mSubmenuLevels.remove(mSubmenuLevels.size() - 1);
+            showLevel(getCurrentLevel());
+        }
+    }
+
+    /**
+     * Goes back to the top level entries, which will be applied to the overlay on the next show
+     */
+    private void closeSubmenus() {
+        while (mSubmenuLevels.size() > 1) {
+            mSubmenuLevels.remove(mSubmenuLevels.size() - 1);
+        }
+        cancelSubmenuTask();
+        mEntriesChanged = true;
+    }
+
+    /**
+     * Remembers the selection, the geometry and the text layouts of the current level
+     */
+    private void saveLevel() {
+        final Submenu level = getCurrentLevel();
+        level.position = mOverMenuLayout.getSelectedPosition();
+        final OverMenuGeometrySnapshot geometry = mOverMenuLayout.saveGeometry();
+        if (null != geometry) {
+            level.geometry = geometry;
+        }
+        final OverMenuTextLayouts textLayouts = mOverMenuLayout.getTextLayouts();
+        if (null != textLayouts) {
+            level.textLayouts = textLayouts;
+        }
+    }
+
+    private void showLevel(@NonNull final Submenu level) {
+        removeCallbacks(mSubmenuDwellAction);
+        mOverMenuLayout.setNextPosition(level.position);
+        mOverMenuLayout.setAdapter(level.adapter, level.textLayouts);
+        if (!mOverMenuLayout.isGeometryPending()) {
+            mOverMenuLayout.updatePosition();
+        } else {
+            // going back: positioned now with the geometry of the last time, instead of after the layout pass
+            mOverMenuLayout.restoreGeometry(level.geometry);
+        }
+    }
+
+    private void cancelSubmenuTask() {
+        if (null != mSubmenuTask) {
+            mSubmenuTask.cancel(false);
+            mSubmenuTask = null;
+        }
+    }
+
+    /**
+     * A level of the menu, the top level entries or the children of an entry
+     */
+    static final class Submenu {
+        final long parentId;
+        final OverMenuAdapter adapter;
+        /** size in the cache: the number of entries when loaded, the adapter can change later */
+        final int size;
+        OverMenuTextLayouts textLayouts;
+        OverMenuGeometrySnapshot geometry;
+        int position = -1;
+
+        Submenu(final long parentId, final OverMenuAdapter adapter) {
+            this.parentId = parentId;
+            this.adapter = adapter;
+            this.size = Math.max(1, null != adapter ? adapter.getCount() : 0);
+        }
+    }
+
+    /**
+     * Submenus by parent id, sized by number of entries
+     */
+    static final class SubmenuCache extends LruCache<Long, Submenu> {
+        SubmenuCache(final int maxEntries) {
+            super(maxEntries);
+        }
+
+        @Override
+        protected int sizeOf(final Long key, final Submenu value) {
+            // must not change while cached
+            return value.size;
+        }
+    }
+
+    private final class SubmenuTask extends AsyncTask<Void, Void, OverMenuAdapter> {
+        final SubmenuLoader loader;
+        final OverMenuAdapter parentAdapter;
+        final int position;
+        final long parentId;
+
+        SubmenuTask(final SubmenuLoader loader, final OverMenuAdapter parentAdapter, final int position, final long parentId) {
+            this.loader = loader;
+            this.parentAdapter = parentAdapter;
+            this.position = position;
+            this.parentId = parentId;
+        }
+
+        @Override
+        protected OverMenuAdapter doInBackground(final Void... params) {
+            return loader.loadSubmenu(parentId);
+        }
+
+        @Override
+        protected void onPostExecute(final OverMenuAdapter adapter) {
+            if (mSubmenuTask == this) {
+                onSubmenuLoaded(this, adapter);
+            }
+        }
+    }
+
+    /**
+     * Provides the children of the entries, see {@link OverMenuAdapter#hasSubmenu(int)}
+     */
+    public interface SubmenuLoader {
+        /**
+         * Invoked on a background thread
+         *
+         * @param parentId the id of the parent entry, see {@link OverMenuAdapter#getItemId(int)}
+         * @return the children of the entry, null if none
+         */
+        OverMenuAdapter loadSubmenu(long parentId);
     }
 
     public interface OnSelectionChangeListener {
         void onSelectionChanged(final int position);
     }
 
+    public interface OnSelectionSettledListener {
+        void onSelectionSettled(final int position);
+    }
+
     public interface OnMenuVisibilityChangeListener {
         void onVisibilityChanged(View view, boolean visible);
     }
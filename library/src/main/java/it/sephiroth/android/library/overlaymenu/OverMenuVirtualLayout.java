@@ -0,0 +1,260 @@
+package it.sephiroth.android.library.overlaymenu;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.util.SparseArray;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+
+/**
+ * Vertical menu container which only keeps views for the rows intersecting
+ * the visible window (plus a small buffer). All the rows share the same height, which
+ * is measured once using a representative entry, so every row position is computed
+ * arithmetically. Rows scrolled out of the window are detached and recycled.
+ */
+final class OverMenuVirtualLayout extends ViewGroup {
+    static final String TAG = "OverMenuVirtualLayout";
+    static final int DEFAULT_BUFFER = 2;
+
+    interface RowFactory {
+        TextView createRow();
+
+        void bindRow(TextView row, int position);
+
+        void onRowRecycled(TextView row);
+    }
+
+    private final RowFactory mFactory;
+    private final SparseArray<TextView> mActiveRows = new SparseArray<TextView>();
+    private final ArrayList<TextView> mScrapRows = new ArrayList<TextView>();
+    private final LayoutParams mRowParams = new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT);
+    private int mCount;
+    private int mRowHeight;
+    private int mRowWidth;
+    private int mBuffer = DEFAULT_BUFFER;
+    private int mFirstVisible = -1;
+    private int mLastVisible = -1;
+    private int mHiddenPosition = -1;
+    private int mRepresentativePosition = -1;
+
+    public OverMenuVirtualLayout(final Context context, @NonNull final RowFactory factory) {
+        super(context);
+        mFactory = factory;
+    }
+
+    public void setCount(final int count) {
+        recycleAll();
+        mCount = count;
+        mRowHeight = 0;
+        mHiddenPosition = -1;
+        requestLayout();
+    }
+
+    /**
+     * Entries have been added or removed: the visible rows are rebound
+     * but the row height is kept
+     */
+    public void onCountChanged(final int count) {
+        recycleAll();
+        mCount = count;
+        requestLayout();
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Position whose row has to be kept invisible (the selected one, covered by the selected text)
+     */
+    public void setHiddenPosition(final int position) {
+        mHiddenPosition = position;
+    }
+
+    /**
+     * Index of the entry used to measure the rows, usually the longest one
+     */
+    public void setRepresentativePosition(final int position) {
+        mRepresentativePosition = position;
+    }
+
+    public int getRepresentativePosition() {
+        return mRepresentativePosition;
+    }
+
+    /**
+     * The representative row changed: it's measured again on the next measure pass
+     */
+    public void invalidateRowSize() {
+        mRowHeight = 0;
+        requestLayout();
+    }
+
+    @SuppressWarnings ("unused")
+    public void setBufferSize(final int rows) {
+        mBuffer = Math.max(0, rows);
+    }
+
+    public int getRowHeight() {
+        return mRowHeight;
+    }
+
+    /**
+     * Returns the row currently bound to the given position, or null if the
+     * position is outside the visible window
+     */
+    public TextView getRowAt(final int position) {
+        return mActiveRows.get(position);
+    }
+
+    @Override
+    public void setTranslationY(final float translationY) {
+        super.setTranslationY(translationY);
+        fillWindow();
+    }
+
+    @Override
+    protected void onMeasure(final int widthMeasureSpec, final int heightMeasureSpec) {
+        if (mCount > 0 && mRowHeight == 0) {
+            measureRepresentativeRow(widthMeasureSpec);
+        }
+
+        final int paddingH = getPaddingLeft() + getPaddingRight();
+        final int paddingV = getPaddingTop() + getPaddingBottom();
+        final int width = resolveSize(mRowWidth + paddingH, widthMeasureSpec);
+
+        // height is intentionally not constrained by the parent: the content is scrolled using the translation
+        setMeasuredDimension(width, paddingV + mCount * mRowHeight);
+
+        final int childWidthSpec = MeasureSpec.makeMeasureSpec(width - paddingH, MeasureSpec.EXACTLY);
+        final int childHeightSpec = MeasureSpec.makeMeasureSpec(mRowHeight, MeasureSpec.EXACTLY);
+        for (int i = 0; i < mActiveRows.size(); i++) {
+            mActiveRows.valueAt(i).measure(childWidthSpec, childHeightSpec);
+        }
+    }
+
+    private void measureRepresentativeRow(final int widthMeasureSpec) {
+        int position = mRepresentativePosition;
+        if (position < 0 || position >= mCount) {
+            position = 0;
+        }
+
+        TextView row = obtainRow();
+        mFactory.bindRow(row, position);
+        row.setLayoutParams(mRowParams);
+
+        final int paddingH = getPaddingLeft() + getPaddingRight();
+        int childWidthSpec = getChildMeasureSpec(widthMeasureSpec, paddingH, LayoutParams.WRAP_CONTENT);
+        row.measure(childWidthSpec, MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED));
+        mRowWidth = row.getMeasuredWidth();
+        mRowHeight = row.getMeasuredHeight();
+        mScrapRows.add(row);
+    }
+
+    @Override
+    protected void onLayout(final boolean changed, final int l, final int t, final int r, final int b) {
+        mFirstVisible = mLastVisible = -1;
+        fillWindow();
+    }
+
+    /**
+     * Binds and positions the rows which are inside the parent's bounds,
+     * recycling the ones which went outside
+     */
+    void fillWindow() {
+        if (mCount == 0 || mRowHeight <= 0 || getParent() == null) {
+            return;
+        }
+
+        final View parent = (View) getParent();
+        final float offset = getTop() + getTranslationY();
+        final int paddingTop = getPaddingTop();
+
+        int first = (int) Math.floor((-offset - paddingTop) / mRowHeight) - mBuffer;
+        int last = (int) Math.ceil((parent.getHeight() - offset - paddingTop) / mRowHeight) + mBuffer;
+        first = OverMenuScrollModel.clamp(first, 0, mCount - 1);
+        last = OverMenuScrollModel.clamp(last, 0, mCount - 1);
+
+        if (first == mFirstVisible && last == mLastVisible) {
+            return;
+        }
+
+        // recycle the rows outside the new window
+        for (int i = mActiveRows.size() - 1; i >= 0; i--) {
+            final int position = mActiveRows.keyAt(i);
+            if (position < first || position > last) {
+                TextView row = mActiveRows.valueAt(i);
+                mActiveRows.removeAt(i);
+                scrapRow(row);
+            }
+        }
+
+        final int childLeft = getPaddingLeft();
+        final int childRight = getMeasuredWidth() - getPaddingRight();
+        final int childWidthSpec = MeasureSpec.makeMeasureSpec(childRight - childLeft, MeasureSpec.EXACTLY);
+        final int childHeightSpec = MeasureSpec.makeMeasureSpec(mRowHeight, MeasureSpec.EXACTLY);
+
+        for (int position = first; position <= last; position++) {
+            if (mActiveRows.get(position) != null) {
+                continue;
+            }
+            TextView row = obtainRow();
+            mFactory.bindRow(row, position);
+            row.setVisibility(position == mHiddenPosition ? View.INVISIBLE : View.VISIBLE);
+
+            if (row.getWindowToken() != null) {
+                // recycled row, still attached to the window
+                attachViewToParent(row, -1, mRowParams);
+            } else {
+                addViewInLayout(row, -1, mRowParams, true);
+            }
+            row.measure(childWidthSpec, childHeightSpec);
+
+            final int top = paddingTop + position * mRowHeight;
+            row.layout(childLeft, top, childRight, top + mRowHeight);
+            mActiveRows.put(position, row);
+        }
+
+        mFirstVisible = first;
+        mLastVisible = last;
+        invalidate();
+    }
+
+    private TextView obtainRow() {
+        final int size = mScrapRows.size();
+        if (size > 0) {
+            return mScrapRows.remove(size - 1);
+        }
+        return mFactory.createRow();
+    }
+
+    private void scrapRow(@NonNull final TextView row) {
+        mFactory.onRowRecycled(row);
+        row.setVisibility(View.VISIBLE);
+        if (row.getParent() == this) {
+            detachViewFromParent(row);
+        }
+        mScrapRows.add(row);
+    }
+
+    private void recycleAll() {
+        for (int i = 0; i < mActiveRows.size(); i++) {
+            scrapRow(mActiveRows.valueAt(i));
+        }
+        mActiveRows.clear();
+        mFirstVisible = mLastVisible = -1;
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        recycleAll();
+        for (TextView row : mScrapRows) {
+            removeDetachedView(row, false);
+        }
+        mScrapRows.clear();
+    }
+}
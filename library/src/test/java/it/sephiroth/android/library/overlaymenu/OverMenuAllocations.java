@@ -0,0 +1,104 @@
+package it.sephiroth.android.library.overlaymenu;
+
+import com.google.monitoring.runtime.instrumentation.AllocationRecorder;
+import com.google.monitoring.runtime.instrumentation.Sampler;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Allocations of the current thread, used by the allocation tests: bytes allocated, or objects
+ * allocated by the library itself. Counting objects needs the allocation instrumenter agent,
+ * see the library build file.
+ */
+final class OverMenuAllocations {
+    static final int RUNS = 5;
+
+    private static final String PACKAGE = OverMenuAllocations.class.getPackage().getName() + ".";
+
+    @SuppressWarnings ("unused")
+    private static Object sProbe;
+
+    private OverMenuAllocations() { }
+
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Bytes allocated running the action, the best of a few runs: the JIT may still
+     * allocate while compiling. The action must be created before measuring.
+     */
+    static long measure(final Runnable action) {
+        final long first = allocatedBytes();
+        final long overhead = allocatedBytes() - first;
+
+        long allocated = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS && allocated > 0; run++) {
+            final long start = allocatedBytes();
+            action.run();
+            allocated = Math.min(allocated, allocatedBytes() - start - overhead);
+        }
+        return allocated;
+    }
+
+    /**
+     * Objects allocated by the library while running the action, on the current thread.
+     * An object is allocated by the library if the first caller outside of the JDK is a library
+     * class: objects allocated by the framework, by Robolectric or by the test are not counted.
+     */
+    static int countObjects(final Runnable action) {
+        final ObjectCounter counter = new ObjectCounter(Thread.currentThread());
+        AllocationRecorder.addSampler(counter);
+        try {
+            counter.counting = true;
+            sProbe = new Object();
+            if (counter.samples == 0) {
+                throw new IllegalStateException("allocations are not recorded, the allocation instrumenter agent is missing");
+            }
+            action.run();
+            counter.counting = false;
+        } finally {
+            AllocationRecorder.removeSampler(counter);
+        }
+        return counter.count;
+    }
+
+    private static final class ObjectCounter implements Sampler {
+        private final Thread mThread;
+        volatile boolean counting;
+        int samples;
+        int count;
+
+        ObjectCounter(final Thread thread) {
+            mThread = thread;
+        }
+
+        @Override
+        public void sampleAllocation(final int arrayLength, final String desc, final Object newObj, final long size) {
+            if (!counting || Thread.currentThread() != mThread) {
+                return;
+            }
+
+            // the stack trace allocates too
+            counting = false;
+            samples++;
+            if (isLibraryAllocation(new Throwable().getStackTrace())) {
+                count++;
+            }
+            counting = true;
+        }
+
+        private static boolean isLibraryAllocation(final StackTraceElement[] stack) {
+            for (StackTraceElement element : stack) {
+                final String name = element.getClassName();
+                if (name.startsWith("java.") || name.startsWith("sun.") || name.startsWith("com.google.monitoring.")
+                    || name.startsWith(OverMenuAllocations.class.getName())) {
+                    continue;
+                }
+                return name.startsWith(PACKAGE) && !name.contains("Test");
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package it.sephiroth.android.library.overlaymenu;
+
+import android.app.Activity;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Budgets of the show / scroll / hide cycle, driven as the gesture detector does:
+ * onDown, 100 onScroll events, onUp.
+ * Objects are counted when allocated by the library itself (see {@link OverMenuAllocations#countObjects(Runnable)}),
+ * layout passes are the ones of the overlay.
+ */
+@RunWith (OverMenuTestRunner.class)
+@Config (constants = BuildConfig.class, sdk = 21, shadows = {
+    OverMenuTestRunner.RealViewTreeObserver.class, OverMenuTestRunner.FrameChoreographer.class, OverMenuTestRunner.MeasuredPaint.class
+})
+public class OverMenuBudgetTest {
+    static final int COUNT = 100;
+    static final int EVENTS = 100;
+    static final int WINDOW_WIDTH = 480;
+    static final int WINDOW_HEIGHT = 800;
+    /** frames run after a cycle, longer than the row fades and the overlay animations */
+    static final int FRAMES = 60;
+
+    /** objects allocated by a whole cycle, once the overlay has been shown: none, also when the selection changes */
+    static final int CYCLE_OBJECT_BUDGET = 0;
+    /** overlay views besides the rows: the overlay, the rows container, the selected text switcher and its two texts */
+    static final int FIXED_VIEWS = 5;
+    /** the first show measures and lays out the overlay once */
+    static final int FIRST_SHOW_LAYOUT_BUDGET = 1;
+
+    private Activity activity;
+    private OverMenuView view;
+    private MotionEvent down;
+    private MotionEvent up;
+    private final MotionEvent[] moves = new MotionEvent[EVENTS];
+    private int selections;
+
+    @Before
+    public void setUp() {
+        activity = Robolectric.buildActivity(Activity.class).create().start().resume().visible().get();
+        // Robolectric windows have an empty frame
+        activity.getWindow().setLayout(WINDOW_WIDTH, WINDOW_HEIGHT);
+        view = new OverMenuView(activity);
+        view.setEntries(makeEntries("Entry", COUNT));
+        view.setDefaultPosition(COUNT / 2);
+        view.setOnSelectionChangedListener(
+            new OverMenuView.OnSelectionChangeListener() {
+                @Override
+                public void onSelectionChanged(final int position) {
+                    selections++;
+                }
+            });
+        activity.setContentView(view);
+        runFrames();
+
+        final long time = SystemClock.uptimeMillis();
+        down = MotionEvent.obtain(time, time, MotionEvent.ACTION_DOWN, 100, 200, 0);
+        for (int i = 0; i < EVENTS; i++) {
+            moves[i] = MotionEvent.obtain(time, time + i + 1, MotionEvent.ACTION_MOVE, 100, 200 + (i % 2), 0);
+        }
+        up = MotionEvent.obtain(time, time + EVENTS + 1, MotionEvent.ACTION_UP, 100, 200, 0);
+    }
+
+    @After
+    public void tearDown() {
+        down.recycle();
+        up.recycle();
+        for (MotionEvent move : moves) {
+            move.recycle();
+        }
+    }
+
+    @Test
+    public void testCycleObjectBudget() {
+        final Runnable cycle = new Runnable() {
+            @Override
+            public void run() {
+                cycle(EVENTS);
+            }
+        };
+
+        cycle.run();
+        runFrames();
+
+        final int objects = OverMenuAllocations.countObjects(cycle);
+        assertTrue("a cycle allocated " + objects + " objects", objects <= CYCLE_OBJECT_BUDGET);
+    }
+
+    @Test
+    public void testSelectionChangeObjectBudget() {
+        cycle(EVENTS);
+        runFrames();
+
+        final int rowHeight = getRowHeight();
+        final Runnable cycle = new Runnable() {
+            @Override
+            public void run() {
+                view.onDown(down);
+                // one row every other event, then back
+                scroll(EVENTS / 2, rowHeight / 2f);
+                scroll(EVENTS / 2, -rowHeight / 2f);
+                view.onUp(up);
+            }
+        };
+
+        cycle.run();
+        runFrames();
+
+        selections = 0;
+        final int objects = OverMenuAllocations.countObjects(cycle);
+        assertTrue("no selection changes", selections > 0);
+        assertTrue("a cycle changing the selection " + selections + " times allocated " + objects + " objects",
+            objects <= CYCLE_OBJECT_BUDGET);
+    }
+
+    @Test
+    public void testSetEntriesViewBudget() {
+        cycle(EVENTS);
+        runFrames();
+
+        final OverMenuLayout overlay = getOverlay();
+        final Set<View> views = collectViews(overlay);
+        assertEquals(COUNT + FIXED_VIEWS, views.size());
+
+        // same number of entries: the rows are reused
+        view.setEntries(makeEntries("Other", COUNT));
+        cycle(EVENTS);
+        runFrames();
+        assertEquals(0, countCreated(views, collectViews(overlay)));
+
+        // only the additional rows are created
+        view.setEntries(makeEntries("Entry", COUNT + 20));
+        cycle(EVENTS);
+        runFrames();
+        assertEquals(20, countCreated(views, collectViews(overlay)));
+    }
+
+    @Test
+    public void testShowLayoutBudget() {
+        cycle(EVENTS);
+        runFrames();
+        final OverMenuLayout overlay = getOverlay();
+        final int firstShow = overlay.getLayoutPassCount();
+        assertTrue("first show took " + firstShow + " layout passes", firstShow <= FIRST_SHOW_LAYOUT_BUDGET);
+
+        // entries and selection didn't change: showing again doesn't need a layout pass
+        for (int i = 0; i < 5; i++) {
+            cycle(EVENTS);
+            runFrames();
+        }
+        assertEquals(firstShow, overlay.getLayoutPassCount());
+    }
+
+    /**
+     * onDown, the scroll events and onUp
+     */
+    private void cycle(final int events) {
+        view.onDown(down);
+        jiggle(events);
+        view.onUp(up);
+    }
+
+    /**
+     * Sends the scroll events, moving the finger by one pixel back and forth:
+     * the selected row doesn't change
+     */
+    private void jiggle(final int events) {
+        for (int i = 0; i < events; i++) {
+            view.onScroll(down, moves[i], 0, i % 2 == 0 ? -1 : 1);
+        }
+    }
+
+    /**
+     * Sends the scroll events in the same direction, one per frame: the row fades
+     * and the layout passes of the selected text run between them
+     *
+     * @param distance distance of every event, in pixels
+     */
+    private void scroll(final int events, final float distance) {
+        for (int i = 0; i < events; i++) {
+            view.onScroll(down, moves[i], 0, distance);
+            ShadowLooper.idleMainLooper(OverMenuTestRunner.FRAME_MS);
+        }
+    }
+
+    private OverMenuLayout getOverlay() {
+        final OverMenuLayout overlay = findOverlay(activity.getWindow().getDecorView());
+        assertNotNull(overlay);
+        return overlay;
+    }
+
+    /**
+     * Height of the rows, the overlay must have been shown once
+     */
+    private int getRowHeight() {
+        final ViewGroup rows = (ViewGroup) getOverlay().getChildAt(0);
+        final int height = rows.getChildAt(0).getHeight();
+        assertTrue("rows not laid out", height > 0);
+        return height;
+    }
+
+    private static CharSequence[] makeEntries(final String prefix, final int count) {
+        final CharSequence[] entries = new CharSequence[count];
+        for (int i = 0; i < count; i++) {
+            entries[i] = prefix + " " + i;
+        }
+        return entries;
+    }
+
+    private static OverMenuLayout findOverlay(final View root) {
+        if (root instanceof OverMenuLayout) {
+            return (OverMenuLayout) root;
+        }
+        if (root instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) root;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                final OverMenuLayout overlay = findOverlay(group.getChildAt(i));
+                if (null != overlay) {
+                    return overlay;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Set<View> collectViews(final View root) {
+        final Set<View> views = Collections.newSetFromMap(new IdentityHashMap<View, Boolean>());
+        collectViews(root, views);
+        return views;
+    }
+
+    private static void collectViews(final View root, final Set<View> views) {
+        views.add(root);
+        if (root instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) root;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                collectViews(group.getChildAt(i), views);
+            }
+        }
+    }
+
+    private static int countCreated(final Set<View> before, final Set<View> after) {
+        int created = 0;
+        for (View view : after) {
+            if (!before.contains(view)) {
+                created++;
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Runs the pending frames: layout passes, animations and frame callbacks
+     */
+    private static void runFrames() {
+        for (int i = 0; i < FRAMES; i++) {
+            ShadowLooper.idleMainLooper(OverMenuTestRunner.FRAME_MS);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package it.sephiroth.android.library.overlaymenu;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OverMenuFaderTest {
+    static final int ROWS = 200;
+
+    static final class Row {
+        float alpha = 1;
+        boolean visible = true;
+    }
+
+    private final OverMenuFader.Applier<Row> applier = new OverMenuFader.Applier<Row>() {
+        @Override
+        public float getAlpha(final Row target) {
+            return target.alpha;
+        }
+
+        @Override
+        public void setAlpha(final Row target, final float alpha) {
+            target.alpha = alpha;
+        }
+
+        @Override
+        public void onFadeEnd(final Row target, final float alpha) {
+            target.visible = alpha > 0;
+        }
+    };
+
+    private OverMenuFader<Row> fader;
+    private Row[] rows;
+    private long time;
+
+    @Before
+    public void setUp() {
+        fader = new OverMenuFader<Row>(applier);
+        rows = new Row[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            rows[i] = new Row();
+        }
+        time = 0;
+    }
+
+    @Test
+    public void testFadeCompletes() {
+        fader.fadeTo(rows[0], 0, time);
+        assertTrue(fader.step(time + 50));
+        assertEquals(0.5f, rows[0].alpha, 0.001f);
+
+        assertFalse(fader.step(time + 100));
+        assertEquals(0f, rows[0].alpha, 0f);
+        assertFalse(rows[0].visible);
+    }
+
+    @Test
+    public void testRetargetStartsFromCurrentAlpha() {
+        fader.fadeTo(rows[0], 0, time);
+        fader.step(time + 50);
+        fader.fadeTo(rows[0], 1, time + 50);
+        fader.step(time + 100);
+        assertEquals(0.75f, rows[0].alpha, 0.001f);
+
+        assertFalse(fader.step(time + 150));
+        assertEquals(1f, rows[0].alpha, 0f);
+        assertTrue(rows[0].visible);
+    }
+
+    @Test
+    public void testCapacityCompletesOldest() {
+        fader = new OverMenuFader<Row>(applier, 2);
+        fader.fadeTo(rows[0], 0, time);
+        fader.fadeTo(rows[1], 0, time);
+        fader.fadeTo(rows[2], 0, time);
+        assertEquals(0f, rows[0].alpha, 0f);
+        assertFalse(rows[0].visible);
+    }
+
+    @Test
+    public void testSelectionChangesDoNotAllocate() {
+        // warm up, so that the measured loop runs compiled code
+        for (int i = 0; i < 20; i++) {
+            scrollAcrossRows();
+        }
+
+        final long allocated = OverMenuAllocations.measure(
+            new Runnable() {
+                @Override
+                public void run() {
+                    scrollAcrossRows();
+                }
+            });
+
+        assertEquals("bytes allocated during " + ROWS + " selection changes", 0, allocated);
+    }
+
+    /**
+     * Simulates a fast scroll: one selection change every 4ms, each one fading
+     * the previous row in and the new one out
+     */
+    private void scrollAcrossRows() {
+        for (int i = 1; i < ROWS; i++) {
+            fader.fadeTo(rows[i - 1], 1, time);
+            fader.fadeTo(rows[i], 0, time);
+            fader.step(time);
+            time += 4;
+        }
+        fader.finish();
+    }
+}
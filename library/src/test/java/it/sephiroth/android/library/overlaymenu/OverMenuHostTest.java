@@ -0,0 +1,117 @@
+package it.sephiroth.android.library.overlaymenu;
+
+import android.app.Activity;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+import android.widget.LinearLayout;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Two triggers sharing the same overlay
+ */
+@RunWith (RobolectricGradleTestRunner.class)
+@Config (constants = BuildConfig.class, sdk = 21)
+public class OverMenuHostTest {
+    static final int STYLE = R.style.OverMenuLayoutDefaultStyle;
+
+    private Activity activity;
+    private OverMenuHost host;
+    private OverMenuView first;
+    private OverMenuView second;
+    private MotionEvent down;
+    private MotionEvent up;
+
+    @Before
+    public void setUp() {
+        activity = Robolectric.buildActivity(Activity.class).create().start().resume().visible().get();
+        final LinearLayout layout = new LinearLayout(activity);
+        first = new OverMenuView(activity);
+        first.setEntries(new CharSequence[]{"First 1", "First 2", "First 3"});
+        second = new OverMenuView(activity);
+        second.setEntries(new CharSequence[]{"Second 1", "Second 2"});
+        layout.addView(first);
+        layout.addView(second);
+        activity.setContentView(layout);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        host = OverMenuHost.get(activity);
+
+        final long time = SystemClock.uptimeMillis();
+        down = MotionEvent.obtain(time, time, MotionEvent.ACTION_DOWN, 10, 10, 0);
+        up = MotionEvent.obtain(time, time + 10, MotionEvent.ACTION_UP, 10, 10, 0);
+    }
+
+    @After
+    public void tearDown() {
+        down.recycle();
+        up.recycle();
+    }
+
+    @Test
+    public void testPrewarmDoesNotTakeTheShownOverlay() {
+        first.onDown(down);
+        assertTrue(first.isMenuShown());
+
+        second.prewarm();
+        assertTrue(first.isMenuShown());
+        assertTrue(host.isBound(first, STYLE));
+
+        first.onUp(up);
+        assertFalse(first.isMenuShown());
+
+        second.prewarm();
+        assertTrue(host.isBound(second, STYLE));
+    }
+
+    @Test
+    public void testTouchDoesNotTakeTheShownOverlay() {
+        first.onDown(down);
+        second.onDown(down);
+        assertTrue(first.isMenuShown());
+        assertFalse(second.isMenuShown());
+        assertTrue(host.isBound(first, STYLE));
+
+        second.onUp(up);
+        first.onUp(up);
+        second.onDown(down);
+        assertTrue(second.isMenuShown());
+        assertTrue(host.isBound(second, STYLE));
+        second.onUp(up);
+    }
+
+    @Test
+    public void testPrecomputeTextDoesNotCreateTheOverlay() {
+        final OverMenuView view = new OverMenuView(activity);
+        view.setPrecomputeText(true);
+        view.setEntries(new CharSequence[]{"Third 1", "Third 2"});
+        assertFalse(host.hasOverlay(STYLE));
+
+        first.onDown(down);
+        assertTrue(host.hasOverlay(STYLE));
+        first.onUp(up);
+    }
+
+    @Test
+    public void testUnbindHidesTheShownOverlay() {
+        first.onDown(down);
+        final OverMenuLayout overlay = host.bind(first, STYLE);
+        assertNotNull(overlay);
+
+        host.unbind(first);
+        assertFalse(first.isMenuShown());
+        assertEquals(View.INVISIBLE, overlay.getVisibility());
+    }
+}
@@ -0,0 +1,116 @@
+package it.sephiroth.android.library.overlaymenu;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class OverMenuScrollModelTest {
+    static final int COUNT = 100;
+    static final int ROW_HEIGHT = 40;
+    static final int PADDING = 10;
+    static final int GAP = 5;
+
+    private OverMenuScrollModel model;
+
+    @Before
+    public void setUp() {
+        model = new OverMenuScrollModel();
+        model.getRowGeometry().setFixed(COUNT, PADDING, ROW_HEIGHT);
+        model.setRange(PADDING * 2 + COUNT * ROW_HEIGHT, PADDING * 2, GAP);
+    }
+
+    @Test
+    public void testRange() {
+        assertEquals(2010 - 30, model.getMaxScroll());
+        assertEquals(-model.getMaxScroll(), model.getMinScroll());
+        assertEquals(2010, model.getCenterY());
+    }
+
+    @Test
+    public void testScrollIsClamped() {
+        assertEquals(model.getMaxScroll(), model.scrollBy(100000), 0);
+        assertEquals(model.getMinScroll(), model.scrollBy(-200000), 0);
+    }
+
+    @Test
+    public void testPositionRoundTrip() {
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals(i, model.getPositionAt(model.getTranslationForPosition(i)));
+        }
+    }
+
+    @Test
+    public void testScrollToPositionIsClamped() {
+        model.scrollToPosition(-5);
+        assertEquals(0, model.getPosition());
+        model.scrollToPosition(COUNT + 5);
+        assertEquals(COUNT - 1, model.getPosition());
+    }
+
+    @Test
+    public void testSnapOntoClosestEntry() {
+        final int translation = model.getTranslationForPosition(10);
+        assertEquals(translation, model.getSnapTranslation(translation - ROW_HEIGHT / 4f), 0);
+        assertEquals(model.getTranslationForPosition(0), model.getSnapTranslation(model.getMaxScroll() + 500), 0);
+    }
+
+    @Test
+    public void testVariableHeightRowsAreCentered() {
+        final int count = 50;
+        final int[] tops = new int[count];
+        int top = PADDING;
+        for (int i = 0; i < count; i++) {
+            tops[i] = top;
+            // rows with and without an icon
+            top += i % 3 == 0 ? 24 : 17;
+        }
+        model.getRowGeometry().setOffsets(tops, count, top);
+        model.setRange(top + PADDING, PADDING * 2, GAP);
+
+        for (int i = 0; i < count; i++) {
+            final int translation = model.getTranslationForPosition(i);
+            final int center = (tops[i] + (i < count - 1 ? tops[i + 1] : top)) / 2;
+            assertEquals(center, model.getCenterY() - translation);
+            assertEquals(i, model.getPositionAt(translation));
+        }
+
+        // snaps onto the row under the center, not onto a multiple of a fixed step
+        for (int i = 0; i < count; i++) {
+            final int translation = model.getTranslationForPosition(i);
+            assertEquals(translation, model.getSnapTranslation(translation + 6), 0);
+            assertEquals(translation, model.getSnapTranslation(translation - 6), 0);
+        }
+    }
+
+    @Test
+    public void testVariableHeightScrollRange() {
+        model.getRowGeometry().setOffsets(new int[]{PADDING, PADDING + 24, PADDING + 41}, 3, PADDING + 58);
+        model.setRange(PADDING * 2 + 58, PADDING * 2, GAP);
+        assertEquals(model.getTranslationForPosition(0), model.getMaxScroll());
+        assertEquals(model.getTranslationForPosition(2), model.getMinScroll());
+        assertEquals(model.getMaxScroll(), model.scrollBy(1000), 0);
+        assertEquals(model.getMinScroll(), model.scrollBy(-2000), 0);
+    }
+
+    @Test
+    public void testScrollDoesNotAllocate() {
+        for (int i = 0; i < 20000; i++) {
+            scroll(i);
+        }
+
+        assertEquals(0, OverMenuAllocations.measure(
+            new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 20000; i++) {
+                        scroll(i);
+                    }
+                }
+            }));
+    }
+
+    private int scroll(final int i) {
+        return model.getPositionAt(model.scrollBy(i % 200 < 100 ? 13 : -13));
+    }
+}
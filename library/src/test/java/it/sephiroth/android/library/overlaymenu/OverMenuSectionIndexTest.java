@@ -0,0 +1,112 @@
+package it.sephiroth.android.library.overlaymenu;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OverMenuSectionIndexTest {
+    static final String[] ENTRIES = {"1984", "Alpha", "apple", "Avocado", "Banana", "Cherry", "cranberry", "Zucchini"};
+
+    private static OverMenuAdapter adapter(final String[] entries) {
+        return new OverMenuAdapter() {
+            @Override
+            public int getCount() {
+                return entries.length;
+            }
+
+            @Override
+            public CharSequence getItem(final int position) {
+                return entries[position];
+            }
+        };
+    }
+
+    private static OverMenuSectionIndex build(final OverMenuAdapter adapter) {
+        OverMenuSectionIndex index = new OverMenuSectionIndex(adapter);
+        index.run();
+        return index;
+    }
+
+    @Test
+    public void testSections() {
+        OverMenuSectionIndex index = build(adapter(ENTRIES));
+        assertTrue(index.isReady());
+        assertEquals(5, index.getSectionCount());
+
+        final String[] sections = {"#", "A", "B", "C", "Z"};
+        final int[] positions = {0, 1, 4, 5, 7};
+        for (int i = 0; i < sections.length; i++) {
+            assertEquals(sections[i], index.getSection(i));
+            assertEquals(positions[i], index.getPositionForSection(i));
+        }
+    }
+
+    @Test
+    public void testSectionForPosition() {
+        OverMenuSectionIndex index = build(adapter(ENTRIES));
+        final int[] expected = {0, 1, 1, 1, 2, 3, 3, 4};
+        for (int i = 0; i < ENTRIES.length; i++) {
+            assertEquals(expected[i], index.getSectionForPosition(i));
+        }
+        assertEquals(-1, index.getSectionForPosition(-1));
+    }
+
+    @Test
+    public void testPositionForPrefix() {
+        OverMenuSectionIndex index = build(adapter(ENTRIES));
+        assertEquals(1, index.getPositionForPrefix("a"));
+        assertEquals(5, index.getPositionForPrefix("Cr"));
+        assertEquals(0, index.getPositionForPrefix("2"));
+        // no D section: the following one
+        assertEquals(7, index.getPositionForPrefix("D"));
+        assertEquals(-1, new OverMenuSectionIndex(adapter(new String[]{"Alpha"})).getPositionForPrefix("A"));
+    }
+
+    @Test
+    public void testCancelled() {
+        OverMenuSectionIndex index = new OverMenuSectionIndex(adapter(ENTRIES));
+        index.cancel();
+        index.run();
+        assertFalse(index.isReady());
+        assertEquals(0, index.getSectionCount());
+    }
+
+    @Test
+    public void testEntriesAreCopied() {
+        final String[] entries = ENTRIES.clone();
+        OverMenuAdapter adapter = adapter(entries);
+        OverMenuSectionIndex index = new OverMenuSectionIndex(adapter);
+        entries[1] = "Beta";
+        index.run();
+        assertEquals("A", index.getSection(1));
+        assertTrue(index.isFor(adapter));
+    }
+
+    @Test
+    public void testLargeMenu() {
+        final String[] entries = new String[26 * 1000];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = (char) ('A' + i / 1000) + "entry" + i;
+        }
+        OverMenuSectionIndex index = build(adapter(entries));
+        assertEquals(26, index.getSectionCount());
+        assertEquals(12000, index.getPositionForPrefix("m"));
+        assertEquals(25, index.getSectionForPosition(entries.length - 1));
+    }
+
+    @Test
+    public void testUpdateKeepsTheSections() {
+        final String[] entries = ENTRIES.clone();
+        OverMenuSectionIndex index = build(adapter(entries));
+
+        entries[2] = "Apricot";
+        assertTrue(index.update(2, 1));
+        assertEquals(5, index.getSectionCount());
+
+        // a new section needs a new index
+        entries[4] = "Date";
+        assertFalse(index.update(4, 1));
+    }
+}
@@ -0,0 +1,83 @@
+package it.sephiroth.android.library.overlaymenu;
+
+import android.graphics.Paint;
+import android.view.Choreographer;
+import android.view.ViewTreeObserver;
+
+import org.junit.runners.model.InitializationError;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+import org.robolectric.shadows.ShadowChoreographer;
+import org.robolectric.shadows.ShadowPaint;
+
+/**
+ * Robolectric runner leaving the allocation recorder to the application class loader:
+ * the recorder installed by the java agent is the same one the tests add their samplers to.
+ * The shadows below let the overlay be laid out, animated and measured as on a device.
+ */
+public class OverMenuTestRunner extends RobolectricGradleTestRunner {
+    static final int FRAME_MS = 16;
+    static final float CHAR_WIDTH = 8;
+
+    public OverMenuTestRunner(final Class<?> testClass) throws InitializationError {
+        super(testClass);
+    }
+
+    @Override
+    public InstrumentationConfiguration createClassLoaderConfig() {
+        return InstrumentationConfiguration.newBuilder()
+            .doNotAquirePackage("com.google.monitoring.runtime.instrumentation")
+            .build();
+    }
+
+    /**
+     * Runs the framework view tree observer: the default shadow keeps the global layout listeners
+     * aside, they are lost when a view is attached and they are never called by the layout passes
+     */
+    @Implements (ViewTreeObserver.class)
+    public static class RealViewTreeObserver { }
+
+    /**
+     * Runs the choreographer callbacks on the next frame, as the display does: the default shadow
+     * runs them right away, an animation posting itself on every frame would never let the clock move
+     */
+    @Implements (Choreographer.class)
+    public static class FrameChoreographer extends ShadowChoreographer {
+        @Implementation
+        @Override
+        public void postCallbackDelayed(final int callbackType, final Runnable action, final Object token, final long delayMillis) {
+            super.postCallbackDelayed(callbackType, action, token, Math.max(delayMillis, FRAME_MS));
+        }
+    }
+
+    /**
+     * Gives every character the same width: text is not measured by default, rows would only be as wide as their padding
+     */
+    @Implements (Paint.class)
+    public static class MeasuredPaint extends ShadowPaint {
+        @Implementation
+        public static float native_getTextRunAdvances(
+            final long paint, final long typeface, final char[] text, final int index, final int count,
+            final int contextIndex, final int contextCount, final boolean isRtl, final float[] advances, final int advancesIndex) {
+            return advance(count, advances, advancesIndex);
+        }
+
+        @Implementation
+        public static float native_getTextRunAdvances(
+            final long paint, final long typeface, final String text, final int start, final int end,
+            final int contextStart, final int contextEnd, final boolean isRtl, final float[] advances, final int advancesIndex) {
+            return advance(end - start, advances, advancesIndex);
+        }
+
+        private static float advance(final int count, final float[] advances, final int advancesIndex) {
+            if (null != advances) {
+                for (int i = 0; i < count; i++) {
+                    advances[advancesIndex + i] = CHAR_WIDTH;
+                }
+            }
+            return count * CHAR_WIDTH;
+        }
+    }
+}